@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2019, Digital Asset (Switzerland) GmbH and/or its affiliates. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.daml.product.structuredproducts;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** The notional of a trade to be proposed to a client. */
+final class Allocation {
+  final String client;
+  final BigDecimal notional;
+
+  Allocation(String client, BigDecimal notional) {
+    this.client = client;
+    this.notional = notional;
+  }
+
+  /**
+   * Reads an allocation file with one `client,notional` pair per line. Empty lines and lines
+   * starting with `#` are ignored.
+   *
+   * @throws IllegalArgumentException if a line is malformed, a notional is not positive or a client
+   *     is allocated more than once
+   */
+  static List<Allocation> read(Path file) throws IOException {
+    List<Allocation> allocations = new ArrayList<>();
+    Set<String> clients = new HashSet<>();
+    int lineNumber = 0;
+    for (String line : Files.readAllLines(file, UTF_8)) {
+      lineNumber++;
+      String trimmed = line.trim();
+      if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+      String[] columns = trimmed.split(",");
+      if (columns.length != 2) {
+        throw new IllegalArgumentException(
+            String.format("Line %d: expected client,notional but got: %s", lineNumber, line));
+      }
+      String client = columns[0].trim();
+      BigDecimal notional;
+      try {
+        notional = new BigDecimal(columns[1].trim());
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException(
+            String.format("Line %d: invalid notional: %s", lineNumber, columns[1]), e);
+      }
+      if (notional.signum() <= 0) {
+        throw new IllegalArgumentException(
+            String.format("Line %d: notional must be positive: %s", lineNumber, notional));
+      }
+      if (!clients.add(client)) {
+        throw new IllegalArgumentException(
+            String.format("Line %d: client %s is allocated more than once", lineNumber, client));
+      }
+      allocations.add(new Allocation(client, notional));
+    }
+    return allocations;
+  }
+
+  @Override
+  public String toString() {
+    return client + "," + notional.toPlainString();
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2019, Digital Asset (Switzerland) GmbH and/or its affiliates. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.daml.product.structuredproducts;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends notifications on a background thread, so that neither setting up the notification channel
+ * (e.g. registering the Telegram bot) nor sending messages blocks startup or event processing.
+ *
+ * <p>The channel is set up lazily by the first task of the background thread. Messages are sent in
+ * the order they are accepted; the ones accepted while the channel is being set up are queued. If
+ * the channel cannot be set up, the messages are passed to the fallback instead.
+ */
+class AsyncNotifier implements Consumer<String> {
+  private static final Logger logger = LoggerFactory.getLogger(AsyncNotifier.class);
+
+  private final ExecutorService executor =
+      Executors.newSingleThreadExecutor(
+          r -> {
+            Thread thread = new Thread(r, "notifier");
+            thread.setDaemon(true);
+            return thread;
+          });
+  private Consumer<String> channel;
+
+  AsyncNotifier(Callable<Consumer<String>> channelFactory, Consumer<String> fallback) {
+    executor.execute(
+        () -> {
+          try {
+            channel = channelFactory.call();
+          } catch (Exception e) {
+            logger.warn(
+                "Error setting up the notification channel. Notifications will be printed in the logs instead.",
+                e);
+            channel = fallback;
+          }
+        });
+  }
+
+  @Override
+  public void accept(String text) {
+    // channel is only accessed from the executor thread
+    executor.execute(() -> channel.accept(text));
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2019, Digital Asset (Switzerland) GmbH and/or its affiliates. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.daml.product.structuredproducts;
+
+import com.daml.ledger.javaapi.data.DamlRecord;
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Read-only view of the arguments of a CouponEvent contract.
+ *
+ * <p>Fields are decoded on access by their position in the DAML template, so they must be kept in
+ * sync with the `CouponEvent` template in DCN.daml.
+ */
+final class CouponEventView {
+  private static final int TRADE_ID = 0;
+  private static final int PRODUCT_ID = 1;
+  private static final int INTEREST_RATE = 2;
+  private static final int INTEREST_PAYMENT_DATE = 4;
+  private static final int ISSUER = 9;
+  private static final int OWNER = 10;
+
+  private final DamlRecord args;
+
+  CouponEventView(DamlRecord args) {
+    this.args = args;
+  }
+
+  String tradeId() {
+    return RecordFields.text(args, TRADE_ID);
+  }
+
+  String productId() {
+    return RecordFields.text(args, PRODUCT_ID);
+  }
+
+  BigDecimal interestRate() {
+    return RecordFields.numeric(args, INTEREST_RATE);
+  }
+
+  Instant interestPaymentDate() {
+    return RecordFields.timestamp(args, INTEREST_PAYMENT_DATE);
+  }
+
+  String issuer() {
+    return RecordFields.party(args, ISSUER);
+  }
+
+  String owner() {
+    return RecordFields.party(args, OWNER);
+  }
+
+  @Override
+  public String toString() {
+    return "CouponEventView" + args;
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2019, Digital Asset (Switzerland) GmbH and/or its affiliates. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.daml.product.structuredproducts;
+
+import com.daml.ledger.rxjava.DamlLedgerClient;
+import da.refapps.structuredproducts.dcn.Trade;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+/**
+ * Proposes a trade of the intermediary to the clients listed in an allocation file, see {@link
+ * TradeDistributor}.
+ */
+public class DistributeTrade {
+  private static final org.slf4j.Logger logger =
+      org.slf4j.LoggerFactory.getLogger(DistributeTrade.class);
+
+  @Option(name = "--trade", required = true, usage = "contract id of the trade to distribute")
+  private String tradeContractId;
+
+  @Option(
+      name = "--allocations",
+      required = true,
+      usage = "file with one client,notional pair per line")
+  private File allocationFile;
+
+  @Option(name = "--party", usage = "the intermediary")
+  private String intermediary = "Intermediary";
+
+  @Option(name = "--batch-size", usage = "proposals per command submission")
+  private int batchSize = 20;
+
+  @Option(name = "--window", usage = "maximum number of command submissions in flight")
+  private int window = 4;
+
+  @Option(name = "--host", usage = "ledger host")
+  private String sandboxHost = System.getenv().getOrDefault("SANDBOX_HOST", "localhost");
+
+  @Option(name = "--port", usage = "ledger port")
+  private int sandboxPort = Integer.parseInt(System.getenv().getOrDefault("SANDBOX_PORT", "6865"));
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    DistributeTrade options = new DistributeTrade();
+    CmdLineParser parser = new CmdLineParser(options);
+    try {
+      parser.parseArgument(args);
+    } catch (CmdLineException e) {
+      System.err.println(e.getMessage());
+      parser.printUsage(System.err);
+      System.exit(2);
+    }
+    System.exit(options.run() ? 0 : 1);
+  }
+
+  private boolean run() throws IOException, InterruptedException {
+    List<Allocation> allocations;
+    try {
+      allocations = Allocation.read(allocationFile.toPath());
+    } catch (IllegalArgumentException e) {
+      logger.error("Invalid allocation file {}: {}", allocationFile, e.getMessage());
+      return false;
+    }
+    Trade.ContractId tradeId = new Trade.ContractId(tradeContractId);
+    DamlLedgerClient client = DamlLedgerClient.newBuilder(sandboxHost, sandboxPort).build();
+    LedgerAPI ledgerAPI = new LedgerAPI(client);
+    ledgerAPI.start();
+    try {
+      TradeDistributor distributor = new TradeDistributor(client, intermediary, batchSize, window);
+      List<Allocation> pending =
+          distributor.validate(distributor.fetchTrade(tradeId), allocations);
+      TradeDistributor.Report report = distributor.distribute(tradeId, pending);
+      logger.info("{}", report);
+      return report.failedBatches() == 0;
+    } catch (IllegalArgumentException e) {
+      logger.error("Allocations rejected, nothing was proposed: {}", e.getMessage());
+      return false;
+    } finally {
+      ledgerAPI.stop();
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2019, Digital Asset (Switzerland) GmbH and/or its affiliates. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.daml.product.structuredproducts;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * In-memory collection of contracts of one template, indexed by date (range queries) and by party
+ * and trade id (exact match). Updated by the event stream and read concurrently by queries.
+ *
+ * @param <R> the type of the projected rows
+ */
+final class IndexedProjection<R> {
+  private final Map<String, Entry<R>> byContractId = new HashMap<>();
+  private final NavigableMap<LocalDate, Map<String, Entry<R>>> byDate = new TreeMap<>();
+  private final Map<String, Map<String, Entry<R>>> byParty = new HashMap<>();
+  private final Map<String, Map<String, Entry<R>>> byTradeId = new HashMap<>();
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /** Adds or replaces the row of the contract. A party may be given more than once. */
+  void add(String contractId, LocalDate date, String tradeId, Collection<String> parties, R row) {
+    Entry<R> entry = new Entry<>(date, tradeId, new LinkedHashSet<>(parties), row);
+    lock.writeLock().lock();
+    try {
+      remove(contractId);
+      byContractId.put(contractId, entry);
+      byDate.computeIfAbsent(date, d -> new LinkedHashMap<>()).put(contractId, entry);
+      byTradeId.computeIfAbsent(tradeId, t -> new LinkedHashMap<>()).put(contractId, entry);
+      for (String party : entry.parties) {
+        byParty.computeIfAbsent(party, p -> new LinkedHashMap<>()).put(contractId, entry);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** @return true if the contract was part of the projection */
+  boolean remove(String contractId) {
+    lock.writeLock().lock();
+    try {
+      Entry<R> entry = byContractId.remove(contractId);
+      if (entry == null) return false;
+      removeFrom(byDate, entry.date, contractId);
+      removeFrom(byTradeId, entry.tradeId, contractId);
+      for (String party : entry.parties) {
+        removeFrom(byParty, party, contractId);
+      }
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Removes the rows of the trades not matching the predicate. */
+  void retainTrades(Predicate<String> tradeIds) {
+    lock.writeLock().lock();
+    try {
+      for (String tradeId : new ArrayList<>(byTradeId.keySet())) {
+        if (!tradeIds.test(tradeId)) {
+          for (String contractId : new ArrayList<>(byTradeId.get(tradeId).keySet())) {
+            remove(contractId);
+          }
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private static <K, R> void removeFrom(
+      Map<K, Map<String, Entry<R>>> index, K key, String contractId) {
+    Map<String, Entry<R>> entries = index.get(key);
+    entries.remove(contractId);
+    if (entries.isEmpty()) index.remove(key);
+  }
+
+  /**
+   * Returns the rows matching all the given criteria, ordered by date. Null criteria match any row.
+   *
+   * @param from the first date of the range, inclusive
+   * @param to the last date of the range, inclusive
+   */
+  List<R> query(LocalDate from, LocalDate to, String party, String tradeId) {
+    lock.readLock().lock();
+    try {
+      // start from the index giving the fewest candidates
+      Collection<Entry<R>> candidates = null;
+      if (tradeId != null) {
+        candidates = byTradeId.getOrDefault(tradeId, Collections.emptyMap()).values();
+      }
+      if (party != null) {
+        Collection<Entry<R>> ofParty = byParty.getOrDefault(party, Collections.emptyMap()).values();
+        if (candidates == null || ofParty.size() < candidates.size()) candidates = ofParty;
+      }
+      if (candidates == null || from != null || to != null) {
+        NavigableMap<LocalDate, Map<String, Entry<R>>> range = dateRange(from, to);
+        int limit = candidates == null ? Integer.MAX_VALUE : candidates.size();
+        if (countUpTo(range, limit) < limit) {
+          candidates = new ArrayList<>();
+          for (Map<String, Entry<R>> entries : range.values()) {
+            candidates.addAll(entries.values());
+          }
+        }
+      }
+      List<Entry<R>> matches = new ArrayList<>();
+      for (Entry<R> entry : candidates) {
+        if (entry.matches(from, to, party, tradeId)) {
+          matches.add(entry);
+        }
+      }
+      matches.sort(Comparator.comparing(entry -> entry.date));
+      List<R> rows = new ArrayList<>(matches.size());
+      for (Entry<R> entry : matches) {
+        rows.add(entry.row);
+      }
+      return rows;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private NavigableMap<LocalDate, Map<String, Entry<R>>> dateRange(LocalDate from, LocalDate to) {
+    if (from != null && to != null) return byDate.subMap(from, true, to, true);
+    if (from != null) return byDate.tailMap(from, true);
+    if (to != null) return byDate.headMap(to, true);
+    return byDate;
+  }
+
+  /** Counts the rows in the date range, stopping at the limit. */
+  private static <R> int countUpTo(
+      NavigableMap<LocalDate, Map<String, Entry<R>>> range, int limit) {
+    int count = 0;
+    for (Map<String, Entry<R>> entries : range.values()) {
+      count += entries.size();
+      if (count >= limit) return limit;
+    }
+    return count;
+  }
+
+  private static final class Entry<R> {
+    private final LocalDate date;
+    private final String tradeId;
+    private final Set<String> parties;
+    private final R row;
+
+    private Entry(LocalDate date, String tradeId, Set<String> parties, R row) {
+      this.date = date;
+      this.tradeId = tradeId;
+      this.parties = parties;
+      this.row = row;
+    }
+
+    private boolean matches(LocalDate from, LocalDate to, String party, String tradeId) {
+      return (from == null || !date.isBefore(from))
+          && (to == null || !date.isAfter(to))
+          && (party == null || parties.contains(party))
+          && (tradeId == null || this.tradeId.equals(tradeId));
+    }
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2019, Digital Asset (Switzerland) GmbH and/or its affiliates. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.daml.product.structuredproducts;
+
+import com.daml.ledger.javaapi.data.DamlRecord;
+import java.time.Instant;
+
+/**
+ * Read-only view of the arguments of a KnockOutEvent contract.
+ *
+ * <p>Fields are decoded on access by their position in the DAML template, so they must be kept in
+ * sync with the `KnockOutEvent` template in DCN.daml.
+ */
+final class KnockOutEventView {
+  private static final int TRADE_ID = 0;
+  private static final int PRODUCT_ID = 1;
+  private static final int REDEMPTION_DATE = 2;
+  private static final int KNOCK_OUT_REASON = 7;
+  private static final int ISSUER = 8;
+  private static final int OWNER = 9;
+
+  private final DamlRecord args;
+
+  KnockOutEventView(DamlRecord args) {
+    this.args = args;
+  }
+
+  String tradeId() {
+    return RecordFields.text(args, TRADE_ID);
+  }
+
+  String productId() {
+    return RecordFields.text(args, PRODUCT_ID);
+  }
+
+  Instant redemptionDate() {
+    return RecordFields.timestamp(args, REDEMPTION_DATE);
+  }
+
+  String knockOutReason() {
+    return RecordFields.text(args, KNOCK_OUT_REASON);
+  }
+
+  String issuer() {
+    return RecordFields.party(args, ISSUER);
+  }
+
+  String owner() {
+    return RecordFields.party(args, OWNER);
+  }
+
+  @Override
+  public String toString() {
+    return "KnockOutEventView" + args;
+  }
+}
@@ -4,15 +4,20 @@
  */
 package com.daml.product.structuredproducts;
 
+import com.daml.ledger.javaapi.data.CreatedEvent;
 import com.daml.ledger.javaapi.data.Event;
 import com.daml.ledger.javaapi.data.FiltersByParty;
 import com.daml.ledger.javaapi.data.LedgerOffset;
 import com.daml.ledger.javaapi.data.NoFilter;
+import com.daml.ledger.javaapi.data.Transaction;
 import com.daml.ledger.rxjava.DamlLedgerClient;
 import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
 import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.disposables.Disposable;
 import io.reactivex.internal.operators.flowable.FlowableFromIterable;
 import java.util.Collections;
+import java.util.List;
 import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,4 +69,45 @@ public class LedgerAPI {
             .flatMap(tx -> new FlowableFromIterable<>(tx.getEvents()));
     compositeDisposable.add(events.forEach(process::accept));
   }
+
+  /**
+   * Listens to whole transactions from the given offset, so that the consumer can checkpoint the
+   * offsets it has processed. The transactions and a failure of the stream are passed on the
+   * given scheduler.
+   *
+   * @return the subscription, which can be cancelled with {@link #stopListening(Disposable)}
+   */
+  public Disposable listenTransactions(
+      String partyName,
+      LedgerOffset begin,
+      Scheduler scheduler,
+      Consumer<Transaction> process,
+      Consumer<Throwable> onError) {
+    Disposable subscription =
+        ledgerClient
+            .getTransactionsClient()
+            .getTransactions(
+                begin,
+                new FiltersByParty(Collections.singletonMap(partyName, NoFilter.instance)),
+                true)
+            .observeOn(scheduler)
+            .subscribe(process::accept, onError::accept);
+    compositeDisposable.add(subscription);
+    return subscription;
+  }
+
+  /** The contracts currently active for the party, e.g. to rebuild a projection. */
+  public List<CreatedEvent> activeContracts(String partyName) {
+    return ledgerClient
+        .getActiveContractSetClient()
+        .getActiveContracts(
+            new FiltersByParty(Collections.singletonMap(partyName, NoFilter.instance)), true)
+        .concatMapIterable(response -> response.getCreatedEvents())
+        .toList()
+        .blockingGet();
+  }
+
+  public void stopListening(Disposable subscription) {
+    compositeDisposable.remove(subscription);
+  }
 }
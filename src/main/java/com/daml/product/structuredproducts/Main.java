@@ -4,37 +4,86 @@
  */
 package com.daml.product.structuredproducts;
 
+import com.daml.ledger.javaapi.data.Event;
+import com.daml.ledger.javaapi.data.LedgerOffset;
 import com.daml.ledger.rxjava.DamlLedgerClient;
 import com.prowidesoftware.swift.model.mt.mt2xx.MT202;
+import com.sun.net.httpserver.HttpServer;
+import io.reactivex.schedulers.Schedulers;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 
 public class Main {
   private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(Main.class);
 
-  public static void main(String[] args) throws InterruptedException {
+  private static final String PARTY = "Intermediary";
+  private static final int HTTP_THREADS = 4;
+
+  public static void main(String[] args) throws InterruptedException, IOException {
     String outputPath = System.getenv().getOrDefault("OUTPUT_PATH", "./output_messages");
     String sandboxHost = System.getenv().getOrDefault("SANDBOX_HOST", "localhost");
     int sandboxPort = Integer.parseInt(System.getenv().getOrDefault("SANDBOX_PORT", "6865"));
+    // sharded mode: instances started with the same SHARD_DIR share the processing of the trades
+    String shardDir = System.getenv("SHARD_DIR");
+    String shardInstanceId =
+        System.getenv().getOrDefault("SHARD_INSTANCE_ID", UUID.randomUUID().toString());
+    Duration shardLeaseTtl =
+        Duration.ofSeconds(
+            Long.parseLong(System.getenv().getOrDefault("SHARD_LEASE_TTL_SECONDS", "10")));
+    // readiness is signalled by creating READY_FILE and on the /ready path of the HTTP server
+    String readyFile = System.getenv("READY_FILE");
+    String httpPort = System.getenv("HTTP_PORT");
 
-    Consumer<String> telegramSender;
+    Readiness readiness = new Readiness(readyFile == null ? null : Paths.get(readyFile));
+    Projections projections = null;
+    HttpServer httpServer = null;
+    if (httpPort != null) {
+      projections = new Projections();
+      httpServer = startHttpServer(Integer.parseInt(httpPort), readiness, projections);
+    }
+    // the Telegram bot is set up in the background while connecting to the ledger
+    Consumer<String> telegramSender =
+        new AsyncNotifier(
+            () -> {
+              TelegramBot telegramBot = TelegramBot.start();
+              return telegramBot::sendMessage;
+            },
+            logger::info);
+    DamlLedgerClient client = DamlLedgerClient.newBuilder(sandboxHost, sandboxPort).build();
+    LedgerAPI ledgerAPI;
     try {
-      TelegramBot telegramBot = TelegramBot.start();
-      telegramSender = telegramBot::sendMessage;
-    } catch (Exception e) {
-      logger.warn(
-          "Error setting up the telegram bot. Telegram messages will be printed in the logs instead of sending them to telegram.",
-          e);
-      telegramSender = logger::info;
+      ledgerAPI =
+          shardDir == null
+              ? runBots(client, outputPath, telegramSender, readiness, projections)
+              : runShardedBots(
+                  client,
+                  outputPath,
+                  telegramSender,
+                  readiness,
+                  projections,
+                  Paths.get(shardDir),
+                  shardInstanceId,
+                  shardLeaseTtl);
+    } catch (IllegalStateException e) {
+      logger.error("Startup failed: {}", e.getMessage(), e);
+      if (httpServer != null) {
+        stopHttpServer(httpServer);
+      }
+      System.exit(1);
+      return;
     }
-    LedgerAPI ledgerAPI =
-        runBots(
-            DamlLedgerClient.newBuilder(sandboxHost, sandboxPort).build(),
-            outputPath,
-            telegramSender);
 
     System.out.println("Application started... Press Ctrl+C to stop it.");
     Thread.currentThread().join();
@@ -43,16 +92,112 @@ public class Main {
 
   public static LedgerAPI runBots(
       DamlLedgerClient client, String outputPath, Consumer<String> telegramSender) {
-    File outputDir = createOutputDir(outputPath);
-    PisteBot bot = new PisteBot(telegramSender, swift -> writeToFile(outputDir, swift));
+    return runBots(client, outputPath, telegramSender, new Readiness(null), null);
+  }
+
+  /** @param projections the projections fed from the ledger, or null if they are not queried */
+  static LedgerAPI runBots(
+      DamlLedgerClient client,
+      String outputPath,
+      Consumer<String> telegramSender,
+      Readiness readiness,
+      Projections projections) {
+    CompletableFuture<File> outputDir = createOutputDirAsync(outputPath);
+    Consumer<Event> bot = createBot(outputDir, telegramSender, readiness);
+
+    LedgerAPI ledgerAPI = startLedgerAPI(client, bot, projections);
+    markReady(ledgerAPI, outputDir, readiness);
+    return ledgerAPI;
+  }
+
+  /**
+   * Runs the bots on the share of the trades owned by this instance, see {@link ShardCoordinator}.
+   * The projections, if not null, contain all the trades owned by this instance.
+   */
+  static LedgerAPI runShardedBots(
+      DamlLedgerClient client,
+      String outputPath,
+      Consumer<String> telegramSender,
+      Readiness readiness,
+      Projections projections,
+      Path shardDir,
+      String instanceId,
+      Duration leaseTtl)
+      throws IOException {
+    CompletableFuture<File> outputDir = createOutputDirAsync(outputPath);
+    Consumer<Event> bot = createBot(outputDir, telegramSender, readiness);
+    ShardCoordinator coordinator = new ShardCoordinator(shardDir, instanceId, leaseTtl);
+
+    LedgerAPI ledgerAPI = new LedgerAPI(client);
+    ledgerAPI.start();
+    new ShardedBot(coordinator, bot, ledgerAPI, PARTY, projections).start();
+    Runtime.getRuntime()
+        .addShutdownHook(
+            new Thread(
+                () -> {
+                  try {
+                    coordinator.close();
+                  } catch (IOException e) {
+                    logger.warn("Could not release the lease of instance {}", instanceId, e);
+                  }
+                }));
+    try {
+      markReady(ledgerAPI, outputDir, readiness);
+    } catch (IllegalStateException e) {
+      // give the slots back to the other instances instead of holding them idle
+      try {
+        coordinator.close();
+      } catch (IOException closeError) {
+        e.addSuppressed(closeError);
+      }
+      throw e;
+    }
+    return ledgerAPI;
+  }
+
+  private static Consumer<Event> createBot(
+      CompletableFuture<File> outputDir,
+      Consumer<String> telegramSender,
+      Readiness readiness) {
+    PisteBot bot = new PisteBot(telegramSender, swift -> writeToFile(outputDir.join(), swift));
+    return event -> {
+      readiness.eventReceived();
+      bot.accept(event);
+    };
+  }
+
+  private static HttpServer startHttpServer(
+      int port, Readiness readiness, Projections projections) throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+    server.createContext("/ready", readiness);
+    new QueryService(projections).register(server);
+    server.setExecutor(Executors.newFixedThreadPool(HTTP_THREADS));
+    server.start();
+    logger.info("HTTP server listening on port {}.", port);
+    return server;
+  }
 
-    return startLedgerAPI(client, bot);
+  private static void stopHttpServer(HttpServer server) {
+    server.stop(0);
+    ((ExecutorService) server.getExecutor()).shutdownNow();
   }
 
-  private static LedgerAPI startLedgerAPI(DamlLedgerClient client, PisteBot bot) {
+  /** The projections are fed whole transactions, so that payments can be related to their event. */
+  private static LedgerAPI startLedgerAPI(
+      DamlLedgerClient client, Consumer<Event> bot, Projections projections) {
     LedgerAPI ledgerAPI = new LedgerAPI(client);
     ledgerAPI.start();
-    ledgerAPI.listenEvents("Intermediary", bot);
+    ledgerAPI.listenTransactions(
+        PARTY,
+        LedgerOffset.LedgerBegin.getInstance(),
+        Schedulers.trampoline(),
+        transaction -> {
+          if (projections != null) {
+            projections.update(transaction.getEvents());
+          }
+          transaction.getEvents().forEach(bot);
+        },
+        error -> logger.error("Error processing the transaction stream", error));
     return ledgerAPI;
   }
 
@@ -76,6 +221,26 @@ public class Main {
     }
   }
 
+  /** Creates the output directory in the background while connecting to the ledger. */
+  private static CompletableFuture<File> createOutputDirAsync(String outputPath) {
+    return CompletableFuture.supplyAsync(() -> createOutputDir(outputPath));
+  }
+
+  /**
+   * Signals readiness once the output directory has been created. If it could not be created,
+   * stops listening to the ledger and fails the startup instead.
+   */
+  private static void markReady(
+      LedgerAPI ledgerAPI, CompletableFuture<File> outputDir, Readiness readiness) {
+    try {
+      outputDir.join();
+    } catch (CompletionException e) {
+      ledgerAPI.stop();
+      throw new IllegalStateException(e.getCause().getMessage(), e.getCause());
+    }
+    readiness.markReady();
+  }
+
   private static File createOutputDir(String outputPath) {
     File dir = new File(outputPath);
     if (!dir.exists() && !dir.mkdirs())
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2019, Digital Asset (Switzerland) GmbH and/or its affiliates. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.daml.product.structuredproducts;
+
+import com.daml.ledger.javaapi.data.DamlRecord;
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Read-only view of the arguments of a PaymentInstructions contract.
+ *
+ * <p>Fields are decoded on access by their position in the DAML template, so they must be kept in
+ * sync with the `PaymentInstructions` and `AccountDetails` types in DCN.daml.
+ */
+final class PaymentInstructionsView {
+  private static final int PAYER_DETAILS = 0;
+  private static final int PAYEE_DETAILS = 1;
+  private static final int TRANSACTION_REFERENCE = 2;
+  private static final int AMOUNT = 3;
+  private static final int CURRENCY = 4;
+  private static final int PAYMENT_DATE = 5;
+
+  private static final int ACCOUNT_OWNER = 0;
+  private static final int BIC = 1;
+  private static final int IBAN = 2;
+
+  private final DamlRecord args;
+
+  PaymentInstructionsView(DamlRecord args) {
+    this.args = args;
+  }
+
+  String payer() {
+    return RecordFields.party(RecordFields.record(args, PAYER_DETAILS), ACCOUNT_OWNER);
+  }
+
+  String payerBic() {
+    return RecordFields.text(RecordFields.record(args, PAYER_DETAILS), BIC);
+  }
+
+  String payee() {
+    return RecordFields.party(RecordFields.record(args, PAYEE_DETAILS), ACCOUNT_OWNER);
+  }
+
+  String payeeBic() {
+    return RecordFields.text(RecordFields.record(args, PAYEE_DETAILS), BIC);
+  }
+
+  String payeeIban() {
+    return RecordFields.text(RecordFields.record(args, PAYEE_DETAILS), IBAN);
+  }
+
+  String transactionReference() {
+    return RecordFields.text(args, TRANSACTION_REFERENCE);
+  }
+
+  BigDecimal amount() {
+    return RecordFields.numeric(args, AMOUNT);
+  }
+
+  String currency() {
+    return RecordFields.text(args, CURRENCY);
+  }
+
+  Instant paymentDate() {
+    return RecordFields.timestamp(args, PAYMENT_DATE);
+  }
+
+  @Override
+  public String toString() {
+    return "PaymentInstructionsView" + args;
+  }
+}
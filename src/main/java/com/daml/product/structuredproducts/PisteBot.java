@@ -51,7 +51,8 @@ public class PisteBot implements Consumer<Event> {
 
   /**
    * Upon receiving an event it checks its type to determine if it is for this bot. Then invokes
-   * processors specific to the type of the event.
+   * processors specific to the type of the event. The contract arguments are wrapped in views that
+   * decode only the fields the processors read, instead of the full generated classes.
    *
    * @param event
    */
@@ -63,11 +64,11 @@ public class PisteBot implements Consumer<Event> {
         CreatedEvent ce = (CreatedEvent) event;
         DamlRecord args = ce.getArguments();
         if (CouponEvent.TEMPLATE_ID.equals(event.getTemplateId())) {
-          processCouponEvent(CouponEvent.fromValue(args));
+          processCouponEvent(new CouponEventView(args));
         } else if (KnockOutEvent.TEMPLATE_ID.equals(event.getTemplateId())) {
-          processKnockOutEvent(KnockOutEvent.fromValue(args));
+          processKnockOutEvent(new KnockOutEventView(args));
         } else if (PaymentInstructions.TEMPLATE_ID.equals(event.getTemplateId())) {
-          processPaymentMessage(PaymentInstructions.fromValue(args));
+          processPaymentMessage(new PaymentInstructionsView(args));
         }
       }
     } catch (RuntimeException e) {
@@ -77,27 +78,24 @@ public class PisteBot implements Consumer<Event> {
   }
 
   /** Processing a coupon event. */
-  void processCouponEvent(CouponEvent event) {
+  void processCouponEvent(CouponEventView event) {
     logger.debug("CouponEvent received: {}", event);
     sendNotification(
         String.format(
             "Coupon event occurred on trade %s between %s and %s",
-            event.tradeId, event.issuer, event.owner));
+            event.tradeId(), event.issuer(), event.owner()));
   }
 
   /** Processing a knock out event. */
-  void processKnockOutEvent(KnockOutEvent event) {
+  void processKnockOutEvent(KnockOutEventView event) {
     logger.debug("KnockOutEvent received: {}", event);
-    String tradeId = event.tradeId;
-    String koReason =
-        Optional.ofNullable(event.knockOutReason)
-            .orElse(PisteBot.UNKNOWN); // fields.getOrDefault("knockOutReason",
-    // Unit.getInstance()).asText().orElse(PisteBot.UNKNOWN).getValue();
+    String tradeId = event.tradeId();
+    String koReason = Optional.ofNullable(event.knockOutReason()).orElse(PisteBot.UNKNOWN);
     sendNotification(String.format("DCN %s has knocked out, reason: %s", tradeId, koReason));
   }
 
   /** Processing payment instruction. */
-  void processPaymentMessage(PaymentInstructions event) {
+  void processPaymentMessage(PaymentInstructionsView event) {
     logger.debug("PaymentInstruction received: {}", event);
     MT202 swiftMessage = convertToSwift(event);
     logger.info("Sending SWIFT message: {}", swiftMessage.message());
@@ -121,17 +119,19 @@ public class PisteBot implements Consumer<Event> {
    * @param pi payment instruction
    * @return an MT202 Swift message based on the info in the payment instruction
    */
-  MT202 convertToSwift(PaymentInstructions pi) {
-    MT202 mt = new MT202(pi.payerDetails.bic, pi.payeeDetails.bic);
-    mt.addField(new Field20().setReference(pi.transactionReference));
-    mt.addField(new Field21().setReference(pi.transactionReference));
+  MT202 convertToSwift(PaymentInstructionsView pi) {
+    String payeeBic = pi.payeeBic();
+    String transactionReference = pi.transactionReference();
+    MT202 mt = new MT202(pi.payerBic(), payeeBic);
+    mt.addField(new Field20().setReference(transactionReference));
+    mt.addField(new Field21().setReference(transactionReference));
     mt.addField(
         new Field32A()
-            .setAmount(pi.amount)
+            .setAmount(pi.amount())
             .setDate(
-                DATE_TIME_FORMATTER.format(pi.paymentDate.atOffset(ZoneOffset.UTC).toLocalDate()))
-            .setCurrency(pi.currency));
-    mt.addField(new Field58A().setAccount(pi.payeeDetails.iban).setBIC(pi.payeeDetails.bic));
+                DATE_TIME_FORMATTER.format(pi.paymentDate().atOffset(ZoneOffset.UTC).toLocalDate()))
+            .setCurrency(pi.currency()));
+    mt.addField(new Field58A().setAccount(pi.payeeIban()).setBIC(payeeBic));
     return mt;
   }
 }
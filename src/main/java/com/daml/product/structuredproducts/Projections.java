@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2019, Digital Asset (Switzerland) GmbH and/or its affiliates. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.daml.product.structuredproducts;
+
+import com.daml.ledger.javaapi.data.ArchivedEvent;
+import com.daml.ledger.javaapi.data.CreatedEvent;
+import com.daml.ledger.javaapi.data.DamlRecord;
+import com.daml.ledger.javaapi.data.Event;
+import da.refapps.structuredproducts.dcn.CouponEvent;
+import da.refapps.structuredproducts.dcn.KnockOutEvent;
+import da.refapps.structuredproducts.dcn.PaymentInstructions;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * Keeps queryable projections of the PaymentInstructions, CouponEvent and KnockOutEvent contracts
+ * seen on the transaction stream, so that they can be queried without going to the ledger.
+ *
+ * <p>Payments are indexed by payment date, coupon events by interest payment date and knock out
+ * events by redemption date (all in UTC). Each of them is also indexed by trade id and by the
+ * parties involved.
+ */
+class Projections {
+
+  /** What a payment instruction pays for. */
+  enum PaymentKind {
+    COUPON,
+    REDEMPTION,
+    OTHER
+  }
+
+  static final class Payment {
+    public final String contractId;
+    public final String tradeId;
+    public final PaymentKind kind;
+    public final String payer;
+    public final String payerBic;
+    public final String payee;
+    public final String payeeBic;
+    public final String payeeIban;
+    public final BigDecimal amount;
+    public final String currency;
+    public final LocalDate paymentDate;
+
+    private Payment(String contractId, PaymentInstructionsView pi, PaymentKind kind) {
+      this.contractId = contractId;
+      this.tradeId = pi.transactionReference();
+      this.kind = kind;
+      this.payer = pi.payer();
+      this.payerBic = pi.payerBic();
+      this.payee = pi.payee();
+      this.payeeBic = pi.payeeBic();
+      this.payeeIban = pi.payeeIban();
+      this.amount = pi.amount();
+      this.currency = pi.currency();
+      this.paymentDate = toDate(pi.paymentDate());
+    }
+  }
+
+  static final class Coupon {
+    public final String contractId;
+    public final String tradeId;
+    public final String productId;
+    public final String issuer;
+    public final String owner;
+    public final BigDecimal interestRate;
+    public final LocalDate interestPaymentDate;
+
+    private Coupon(String contractId, CouponEventView event) {
+      this.contractId = contractId;
+      this.tradeId = event.tradeId();
+      this.productId = event.productId();
+      this.issuer = event.issuer();
+      this.owner = event.owner();
+      this.interestRate = event.interestRate();
+      this.interestPaymentDate = toDate(event.interestPaymentDate());
+    }
+  }
+
+  static final class KnockOut {
+    public final String contractId;
+    public final String tradeId;
+    public final String productId;
+    public final String issuer;
+    public final String owner;
+    public final String knockOutReason;
+    public final LocalDate redemptionDate;
+
+    private KnockOut(String contractId, KnockOutEventView event) {
+      this.contractId = contractId;
+      this.tradeId = event.tradeId();
+      this.productId = event.productId();
+      this.issuer = event.issuer();
+      this.owner = event.owner();
+      this.knockOutReason = event.knockOutReason();
+      this.redemptionDate = toDate(event.redemptionDate());
+    }
+  }
+
+  private final IndexedProjection<Payment> payments = new IndexedProjection<>();
+  private final IndexedProjection<Coupon> coupons = new IndexedProjection<>();
+  private final IndexedProjection<KnockOut> knockOuts = new IndexedProjection<>();
+
+  /**
+   * Applies the events of one transaction, in their order in the transaction.
+   *
+   * <p>The lifecycle choice creates the coupon or knock out event before the payment instruction,
+   * in the same transaction, so a payment is classified by the event created before it for the same
+   * trade and parties. Neither the trade id (only unique per buyer) nor the date (a knock out can
+   * be redeemed on the date of a coupon) is enough on its own.
+   */
+  void update(List<? extends Event> events) {
+    Map<String, PaymentKind> lifecycleEvents = new HashMap<>();
+    for (Event event : events) {
+      String contractId = event.getContractId();
+      if (event instanceof CreatedEvent) {
+        DamlRecord args = ((CreatedEvent) event).getArguments();
+        if (CouponEvent.TEMPLATE_ID.equals(event.getTemplateId())) {
+          Coupon coupon = addCoupon(contractId, args);
+          lifecycleEvents.put(
+              lifecycleKey(coupon.tradeId, coupon.issuer, coupon.owner), PaymentKind.COUPON);
+        } else if (KnockOutEvent.TEMPLATE_ID.equals(event.getTemplateId())) {
+          KnockOut knockOut = addKnockOut(contractId, args);
+          lifecycleEvents.put(
+              lifecycleKey(knockOut.tradeId, knockOut.issuer, knockOut.owner),
+              PaymentKind.REDEMPTION);
+        } else if (PaymentInstructions.TEMPLATE_ID.equals(event.getTemplateId())) {
+          PaymentInstructionsView pi = new PaymentInstructionsView(args);
+          addPayment(
+              contractId,
+              pi,
+              lifecycleEvents.getOrDefault(
+                  lifecycleKey(pi.transactionReference(), pi.payer(), pi.payee()),
+                  PaymentKind.OTHER));
+        }
+      } else if (event instanceof ArchivedEvent) {
+        if (!payments.remove(contractId) && !coupons.remove(contractId)) {
+          knockOuts.remove(contractId);
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds active contracts, e.g. those of the trades taken over from another instance.
+   *
+   * <p>Active contracts do not come with the transaction that created them, so a payment is
+   * classified by an event for the same trade and parties due on its payment date instead. The
+   * event contracts are never archived, so they are active as long as their payment. Should a knock
+   * out be redeemed on the payment date of a coupon of the same trade, both payments are classified
+   * as redemptions.
+   */
+  void load(List<CreatedEvent> contracts) {
+    Map<String, PaymentKind> lifecycleEvents = new HashMap<>();
+    List<CreatedEvent> paymentInstructions = new ArrayList<>();
+    for (CreatedEvent contract : contracts) {
+      String contractId = contract.getContractId();
+      if (CouponEvent.TEMPLATE_ID.equals(contract.getTemplateId())) {
+        Coupon coupon = addCoupon(contractId, contract.getArguments());
+        lifecycleEvents.putIfAbsent(
+            lifecycleKey(coupon.tradeId, coupon.issuer, coupon.owner)
+                + '\n'
+                + coupon.interestPaymentDate,
+            PaymentKind.COUPON);
+      } else if (KnockOutEvent.TEMPLATE_ID.equals(contract.getTemplateId())) {
+        KnockOut knockOut = addKnockOut(contractId, contract.getArguments());
+        lifecycleEvents.put(
+            lifecycleKey(knockOut.tradeId, knockOut.issuer, knockOut.owner)
+                + '\n'
+                + knockOut.redemptionDate,
+            PaymentKind.REDEMPTION);
+      } else if (PaymentInstructions.TEMPLATE_ID.equals(contract.getTemplateId())) {
+        paymentInstructions.add(contract);
+      }
+    }
+    for (CreatedEvent contract : paymentInstructions) {
+      PaymentInstructionsView pi = new PaymentInstructionsView(contract.getArguments());
+      addPayment(
+          contract.getContractId(),
+          pi,
+          lifecycleEvents.getOrDefault(
+              lifecycleKey(pi.transactionReference(), pi.payer(), pi.payee())
+                  + '\n'
+                  + toDate(pi.paymentDate()),
+              PaymentKind.OTHER));
+    }
+  }
+
+  private Coupon addCoupon(String contractId, DamlRecord args) {
+    Coupon coupon = new Coupon(contractId, new CouponEventView(args));
+    coupons.add(
+        contractId,
+        coupon.interestPaymentDate,
+        coupon.tradeId,
+        Arrays.asList(coupon.issuer, coupon.owner),
+        coupon);
+    return coupon;
+  }
+
+  private KnockOut addKnockOut(String contractId, DamlRecord args) {
+    KnockOut knockOut = new KnockOut(contractId, new KnockOutEventView(args));
+    knockOuts.add(
+        contractId,
+        knockOut.redemptionDate,
+        knockOut.tradeId,
+        Arrays.asList(knockOut.issuer, knockOut.owner),
+        knockOut);
+    return knockOut;
+  }
+
+  private void addPayment(String contractId, PaymentInstructionsView pi, PaymentKind kind) {
+    Payment payment = new Payment(contractId, pi, kind);
+    payments.add(
+        contractId,
+        payment.paymentDate,
+        payment.tradeId,
+        Arrays.asList(payment.payer, payment.payee),
+        payment);
+  }
+
+  /** Removes the trades not matching the predicate, e.g. those no longer owned by a shard. */
+  void retainTrades(Predicate<String> tradeIds) {
+    payments.retainTrades(tradeIds);
+    coupons.retainTrades(tradeIds);
+    knockOuts.retainTrades(tradeIds);
+  }
+
+  List<Payment> payments(LocalDate from, LocalDate to, String party, String tradeId) {
+    return payments.query(from, to, party, tradeId);
+  }
+
+  /** Sums the amounts of the matching payments per currency. */
+  Map<String, BigDecimal> paymentTotals(
+      LocalDate from, LocalDate to, String party, String tradeId, PaymentKind kind) {
+    Map<String, BigDecimal> totals = new TreeMap<>();
+    for (Payment payment : payments.query(from, to, party, tradeId)) {
+      if (kind == null || kind == payment.kind) {
+        totals.merge(payment.currency, payment.amount, BigDecimal::add);
+      }
+    }
+    return totals;
+  }
+
+  List<Coupon> coupons(LocalDate from, LocalDate to, String party, String tradeId) {
+    return coupons.query(from, to, party, tradeId);
+  }
+
+  List<KnockOut> knockOuts(LocalDate from, LocalDate to, String party, String tradeId) {
+    return knockOuts.query(from, to, party, tradeId);
+  }
+
+  private static String lifecycleKey(String tradeId, String payer, String payee) {
+    return tradeId + '\n' + payer + '\n' + payee;
+  }
+
+  private static LocalDate toDate(Instant instant) {
+    return instant.atOffset(ZoneOffset.UTC).toLocalDate();
+  }
+}
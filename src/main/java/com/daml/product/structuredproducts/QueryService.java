@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2019, Digital Asset (Switzerland) GmbH and/or its affiliates. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.daml.product.structuredproducts;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read-only HTTP/JSON API over the {@link Projections}. All endpoints accept the optional query
+ * parameters `from` and `to` (inclusive ISO dates), `party` and `tradeId`:
+ *
+ * <ul>
+ *   <li>`GET /payments`: payment instructions by payment date
+ *   <li>`GET /payments/totals`: payment amounts summed per currency, optionally only of one
+ *       `kind` (coupon, redemption or other)
+ *   <li>`GET /coupons`: coupon events by interest payment date
+ *   <li>`GET /knockouts`: knock out events by redemption date
+ * </ul>
+ */
+class QueryService implements HttpHandler {
+  private static final Logger logger = LoggerFactory.getLogger(QueryService.class);
+
+  private final Projections projections;
+  private final ObjectMapper mapper =
+      new ObjectMapper()
+          .registerModule(new JavaTimeModule())
+          .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+  QueryService(Projections projections) {
+    this.projections = projections;
+  }
+
+  void register(HttpServer server) {
+    server.createContext("/payments", this);
+    server.createContext("/coupons", this);
+    server.createContext("/knockouts", this);
+  }
+
+  @Override
+  public void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        respond(exchange, 405, "Only GET is supported");
+        return;
+      }
+      Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+      Object result = query(exchange.getRequestURI().getPath(), params);
+      if (result == null) {
+        respond(exchange, 404, "Unknown path: " + exchange.getRequestURI().getPath());
+      } else {
+        respond(exchange, 200, mapper.writeValueAsString(result));
+      }
+    } catch (IllegalArgumentException | DateTimeParseException e) {
+      respond(exchange, 400, e.getMessage());
+    } catch (RuntimeException e) {
+      logger.error("Error answering query {}", exchange.getRequestURI(), e);
+      respond(exchange, 500, "Internal error");
+    }
+  }
+
+  /** @return the result of the query, or null if there is no endpoint at the path */
+  Object query(String path, Map<String, String> params) {
+    LocalDate from = date(params.get("from"));
+    LocalDate to = date(params.get("to"));
+    String party = params.get("party");
+    String tradeId = params.get("tradeId");
+    switch (path) {
+      case "/payments":
+        return projections.payments(from, to, party, tradeId);
+      case "/payments/totals":
+        String kind = params.get("kind");
+        return projections.paymentTotals(
+            from,
+            to,
+            party,
+            tradeId,
+            kind == null ? null : Projections.PaymentKind.valueOf(kind.toUpperCase(Locale.ROOT)));
+      case "/coupons":
+        return projections.coupons(from, to, party, tradeId);
+      case "/knockouts":
+        return projections.knockOuts(from, to, party, tradeId);
+      default:
+        return null;
+    }
+  }
+
+  private static LocalDate date(String value) {
+    return value == null ? null : LocalDate.parse(value);
+  }
+
+  static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+    Map<String, String> params = new HashMap<>();
+    if (rawQuery == null || rawQuery.isEmpty()) return params;
+    for (String param : rawQuery.split("&")) {
+      int eq = param.indexOf('=');
+      if (eq > 0) {
+        params.put(
+            URLDecoder.decode(param.substring(0, eq), UTF_8.name()),
+            URLDecoder.decode(param.substring(eq + 1), UTF_8.name()));
+      }
+    }
+    return params;
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(UTF_8);
+    exchange
+        .getResponseHeaders()
+        .set("Content-Type", status == 200 ? "application/json" : "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream os = exchange.getResponseBody()) {
+      os.write(bytes);
+    }
+  }
+}
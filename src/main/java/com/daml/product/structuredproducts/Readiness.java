@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2019, Digital Asset (Switzerland) GmbH and/or its affiliates. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.daml.product.structuredproducts;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Signals that the bots are connected to the ledger and listening to events, and measures the time
+ * to readiness and to the first event from the creation of this object.
+ *
+ * <p>Readiness can be polled over HTTP (200 when ready, 503 before) or, if a ready file is given,
+ * by waiting for the file to appear.
+ */
+class Readiness implements HttpHandler {
+  private static final Logger logger = LoggerFactory.getLogger(Readiness.class);
+
+  private final Path readyFile;
+  private final long startNanos = System.nanoTime();
+  private final AtomicBoolean firstEventReceived = new AtomicBoolean();
+  private volatile boolean ready;
+  private volatile Duration timeToReady;
+  private volatile Duration timeToFirstEvent;
+
+  /** @param readyFile the file created when ready, or null if no file should be created */
+  Readiness(Path readyFile) {
+    this.readyFile = readyFile;
+    if (readyFile != null) {
+      try {
+        // left over by a previous run
+        Files.deleteIfExists(readyFile);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not delete ready file: " + readyFile, e);
+      }
+    }
+  }
+
+  void markReady() {
+    timeToReady = sinceStart();
+    ready = true;
+    logger.info(
+        "Ready {} ms after startup, {} ms after JVM start.",
+        timeToReady.toMillis(),
+        millisSinceJvmStart());
+    if (readyFile != null) {
+      try {
+        Files.write(readyFile, "ready".getBytes(UTF_8));
+      } catch (IOException e) {
+        logger.warn("Could not create ready file: {}", readyFile, e);
+      }
+    }
+  }
+
+  void eventReceived() {
+    if (firstEventReceived.compareAndSet(false, true)) {
+      timeToFirstEvent = sinceStart();
+      logger.info(
+          "First event received {} ms after startup, {} ms after JVM start.",
+          timeToFirstEvent.toMillis(),
+          millisSinceJvmStart());
+    }
+  }
+
+  Optional<Duration> timeToReady() {
+    return Optional.ofNullable(timeToReady);
+  }
+
+  Optional<Duration> timeToFirstEvent() {
+    return Optional.ofNullable(timeToFirstEvent);
+  }
+
+  @Override
+  public void handle(HttpExchange exchange) throws IOException {
+    byte[] body = (ready ? "ready" : "starting").getBytes(UTF_8);
+    exchange.sendResponseHeaders(ready ? 200 : 503, body.length);
+    try (OutputStream os = exchange.getResponseBody()) {
+      os.write(body);
+    }
+  }
+
+  private Duration sinceStart() {
+    return Duration.ofNanos(System.nanoTime() - startNanos);
+  }
+
+  private static long millisSinceJvmStart() {
+    return System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2019, Digital Asset (Switzerland) GmbH and/or its affiliates. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.daml.product.structuredproducts;
+
+import com.daml.ledger.javaapi.data.DamlRecord;
+import com.daml.ledger.javaapi.data.Value;
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Positional accessors for the fields of a DAML record.
+ *
+ * <p>Unlike the generated `fromValue` methods these read a single field without decoding the rest
+ * of the record, so the event views can extract what the bots need without building the full
+ * object graph.
+ */
+final class RecordFields {
+
+  private RecordFields() {}
+
+  static String text(DamlRecord record, int index) {
+    return field(record, index)
+        .asText()
+        .orElseThrow(() -> mismatch(record, index, "Text"))
+        .getValue();
+  }
+
+  static String party(DamlRecord record, int index) {
+    return field(record, index)
+        .asParty()
+        .orElseThrow(() -> mismatch(record, index, "Party"))
+        .getValue();
+  }
+
+  static BigDecimal numeric(DamlRecord record, int index) {
+    return field(record, index)
+        .asNumeric()
+        .orElseThrow(() -> mismatch(record, index, "Numeric"))
+        .getValue();
+  }
+
+  static Instant timestamp(DamlRecord record, int index) {
+    return field(record, index)
+        .asTimestamp()
+        .orElseThrow(() -> mismatch(record, index, "Timestamp"))
+        .getValue();
+  }
+
+  static DamlRecord record(DamlRecord record, int index) {
+    return field(record, index)
+        .asRecord()
+        .orElseThrow(() -> mismatch(record, index, "Record"));
+  }
+
+  private static Value field(DamlRecord record, int index) {
+    return record.getFields().get(index).getValue();
+  }
+
+  private static IllegalArgumentException mismatch(DamlRecord record, int index, String type) {
+    return new IllegalArgumentException(
+        String.format("Expected field %d of %s to be of type %s", index, record, type));
+  }
+}
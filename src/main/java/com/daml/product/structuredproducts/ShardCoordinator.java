@@ -0,0 +1,418 @@
+/*
+ * Copyright (c) 2019, Digital Asset (Switzerland) GmbH and/or its affiliates. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.daml.product.structuredproducts;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.joining;
+
+import com.daml.ledger.javaapi.data.LedgerOffset;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coordinates several bot instances sharing the same transaction stream through a directory that
+ * all of them can access (a local directory, or a shared file system when the instances run on
+ * different hosts).
+ *
+ * <p>Trades are mapped to a fixed number of slots by the hash of their trade id. Every instance
+ * keeps a lease file in the directory alive, and the slots are distributed among the instances
+ * with a live lease by rendezvous hashing, so when an instance joins or its lease expires only the
+ * slots it owned move. The directory also contains
+ *
+ * <ul>
+ *   <li>the offset of the last transaction processed by each instance and the slots it covers, so
+ *       that a new owner of a slot continues where the previous one stopped, and
+ *   <li>a claim file per slot and contract, created atomically before the contract is processed
+ *       and marked as done afterwards, so that no contract is processed twice even if two
+ *       instances briefly own the same slot during a rebalance. Claims that were never marked as
+ *       done are reported when their slot is taken over; done claims are pruned once they are
+ *       covered by the checkpoint.
+ * </ul>
+ */
+class ShardCoordinator implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(ShardCoordinator.class);
+
+  static final int SLOTS = 64;
+  private static final String LEASE_SUFFIX = ".lease";
+  private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+  private static final String TMP_SUFFIX = ".tmp";
+  private static final String CLAIMED = "claimed";
+  private static final String DONE = "done";
+
+  private final Path leaseDir;
+  private final Path checkpointDir;
+  private final Path claimDir;
+  private final String instanceId;
+  private final Duration leaseTtl;
+  private final Map<Integer, String> checkpoints = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread thread = new Thread(r, "shard-coordinator");
+            thread.setDaemon(true);
+            return thread;
+          });
+  private volatile BitSet ownedSlots = new BitSet(SLOTS);
+
+  /**
+   * @param dir the coordination directory shared by the instances
+   * @param instanceId a name unique among the instances
+   * @param leaseTtl the time after which the slots of an instance that stopped renewing its lease
+   *     are taken over by the others
+   */
+  ShardCoordinator(Path dir, String instanceId, Duration leaseTtl) {
+    this.leaseDir = dir.resolve("leases");
+    this.checkpointDir = dir.resolve("checkpoints");
+    this.claimDir = dir.resolve("claims");
+    this.instanceId = instanceId;
+    this.leaseTtl = leaseTtl;
+  }
+
+  /**
+   * Acquires the initial set of slots and starts renewing the lease in the background.
+   *
+   * @param onSlotsGained called from the coordinator thread when this instance takes over slots
+   *     from another instance, so that it can replay them from their checkpoints
+   */
+  void start(Runnable onSlotsGained) throws IOException {
+    Files.createDirectories(leaseDir);
+    Files.createDirectories(checkpointDir);
+    Files.createDirectories(claimDir);
+    heartbeat();
+    long period = Math.max(1, leaseTtl.toMillis() / 3);
+    scheduler.scheduleAtFixedRate(
+        () -> {
+          try {
+            if (heartbeat()) {
+              onSlotsGained.run();
+            }
+          } catch (RuntimeException | IOException e) {
+            logger.error("Error renewing the lease of instance {}", instanceId, e);
+          }
+        },
+        period,
+        period,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Renews the lease of this instance and recomputes the slots it owns.
+   *
+   * @return true if this instance took over slots it did not own before
+   */
+  boolean heartbeat() throws IOException {
+    Files.write(leaseDir.resolve(instanceId + LEASE_SUFFIX), instanceId.getBytes(UTF_8));
+    List<String> members = liveMembers();
+    BitSet previous = ownedSlots;
+    BitSet owned = new BitSet(SLOTS);
+    for (int slot = 0; slot < SLOTS; slot++) {
+      if (instanceId.equals(owner(slot, members))) {
+        owned.set(slot);
+      }
+    }
+    BitSet gained = (BitSet) owned.clone();
+    gained.andNot(previous);
+    readCheckpoints(gained);
+    reportInDoubtClaims(gained);
+    ownedSlots = owned;
+    pruneClaims(owned);
+    if (!owned.equals(previous)) {
+      logger.info(
+          "Instance {} owns {} of {} slots, live instances: {}",
+          instanceId,
+          owned.cardinality(),
+          SLOTS,
+          members);
+    }
+    return !gained.isEmpty();
+  }
+
+  private List<String> liveMembers() throws IOException {
+    Instant expiry = Instant.now().minus(leaseTtl);
+    List<String> members = new ArrayList<>();
+    try (Stream<Path> leases = Files.list(leaseDir)) {
+      for (Path lease : leases.collect(Collectors.toList())) {
+        String name = lease.getFileName().toString();
+        if (name.endsWith(LEASE_SUFFIX) && isAlive(lease, expiry)) {
+          members.add(name.substring(0, name.length() - LEASE_SUFFIX.length()));
+        }
+      }
+    }
+    if (!members.contains(instanceId)) {
+      members.add(instanceId);
+    }
+    Collections.sort(members);
+    return members;
+  }
+
+  private static boolean isAlive(Path lease, Instant expiry) throws IOException {
+    try {
+      return Files.getLastModifiedTime(lease).toInstant().isAfter(expiry);
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+  }
+
+  /** Picks the member with the highest weight for the slot, see rendezvous hashing. */
+  static String owner(int slot, List<String> members) {
+    String owner = null;
+    long ownerWeight = Long.MIN_VALUE;
+    for (String member : members) {
+      long weight = weight(member, slot);
+      if (owner == null || weight > ownerWeight) {
+        owner = member;
+        ownerWeight = weight;
+      }
+    }
+    return owner;
+  }
+
+  private static long weight(String member, int slot) {
+    long h = member.hashCode() * 0x9E3779B97F4A7C15L + slot;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /** Maps a trade id to its slot. String.hashCode is specified, so all instances agree on it. */
+  static int slotOf(String tradeId) {
+    return Math.floorMod(tradeId.hashCode(), SLOTS);
+  }
+
+  boolean owns(int slot) {
+    return ownedSlots.get(slot);
+  }
+
+  /** The slots owned by this instance; the returned set must not be modified. */
+  BitSet ownedSlots() {
+    return ownedSlots;
+  }
+
+  /** Whether the transaction at the offset has already been processed for the slot. */
+  boolean isProcessed(int slot, String offset) {
+    String checkpoint = checkpoints.get(slot);
+    // ledger offsets are ordered lexicographically
+    return checkpoint != null && offset.compareTo(checkpoint) <= 0;
+  }
+
+  /** The offset to (re)start the transaction stream from: the oldest checkpoint of the slots. */
+  LedgerOffset resumeOffset(BitSet owned) {
+    if (owned.isEmpty()) {
+      return LedgerOffset.LedgerEnd.getInstance();
+    }
+    String oldest = null;
+    for (int slot = owned.nextSetBit(0); slot >= 0; slot = owned.nextSetBit(slot + 1)) {
+      String checkpoint = checkpoints.get(slot);
+      if (checkpoint == null) {
+        return LedgerOffset.LedgerBegin.getInstance();
+      }
+      if (oldest == null || checkpoint.compareTo(oldest) < 0) {
+        oldest = checkpoint;
+      }
+    }
+    return new LedgerOffset.Absolute(oldest);
+  }
+
+  /**
+   * Records that the transaction at the offset has been processed for all the given slots.
+   *
+   * <p>Each instance keeps a single checkpoint file with its last processed offset and the slots it
+   * covers, so one file is written per transaction regardless of the number of slots. The
+   * checkpoint of a slot is the highest offset among the files covering it.
+   */
+  void saveCheckpoint(String offset, BitSet slots) {
+    try {
+      writeAtomically(
+          checkpointDir.resolve(instanceId + CHECKPOINT_SUFFIX),
+          offset + "\n" + slots.stream().mapToObj(Integer::toString).collect(joining(",")));
+      slots.stream().forEach(slot -> checkpoints.put(slot, offset));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not save the checkpoint of instance " + instanceId, e);
+    }
+  }
+
+  private void readCheckpoints(BitSet slots) throws IOException {
+    slots.stream().forEach(checkpoints::remove);
+    try (Stream<Path> files = Files.list(checkpointDir)) {
+      for (Path file : files.collect(Collectors.toList())) {
+        if (!file.getFileName().toString().endsWith(CHECKPOINT_SUFFIX)) continue;
+        List<String> lines = Files.readAllLines(file, UTF_8);
+        if (lines.size() < 2 || lines.get(1).isEmpty()) continue;
+        String offset = lines.get(0);
+        for (String slotName : lines.get(1).split(",")) {
+          int slot = Integer.parseInt(slotName);
+          if (slots.get(slot)) {
+            checkpoints.merge(slot, offset, (a, b) -> a.compareTo(b) >= 0 ? a : b);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Atomically claims a contract for processing. The claim stays in doubt until it is {@link
+   * #complete completed}.
+   *
+   * @return true if this is the first claim on the contract, false if it has already been claimed
+   *     by this or another instance
+   */
+  boolean claim(int slot, String contractId, String offset) {
+    Path claim = null;
+    try {
+      Path dir = claimDir(slot);
+      Files.createDirectories(dir);
+      claim = dir.resolve(URLEncoder.encode(contractId, UTF_8.name()));
+      Files.write(
+          claim,
+          (CLAIMED + " " + offset).getBytes(UTF_8),
+          StandardOpenOption.CREATE_NEW,
+          StandardOpenOption.WRITE);
+      return true;
+    } catch (FileAlreadyExistsException e) {
+      reportClaim(claim, contractId);
+      return false;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not claim contract " + contractId, e);
+    }
+  }
+
+  /**
+   * Logs why a contract that is already claimed is skipped: an error if its processing was never
+   * confirmed, e.g. because it failed on this instance before the transaction is replayed.
+   */
+  private static void reportClaim(Path claim, String contractId) {
+    try {
+      String[] state = readClaim(claim);
+      if (state != null && CLAIMED.equals(state[0])) {
+        logger.error(
+            "Contract {} was claimed at offset {} but was not confirmed as processed, skipping "
+                + "it. Check whether it was processed and delete {} once resolved.",
+            contractId,
+            state[1],
+            claim);
+        return;
+      }
+    } catch (IOException e) {
+      logger.warn("Could not read the claim {}", claim, e);
+    }
+    logger.info("Contract {} has already been processed, skipping it.", contractId);
+  }
+
+  /** Records that a claimed contract has been processed. */
+  void complete(int slot, String contractId, String offset) {
+    try {
+      writeAtomically(
+          claimDir(slot).resolve(URLEncoder.encode(contractId, UTF_8.name())),
+          DONE + " " + offset);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not complete the claim of contract " + contractId, e);
+    }
+  }
+
+  /**
+   * Reports the contracts of the slots that were claimed but never completed, e.g. because the
+   * instance processing them died. Their claims are kept until an operator has checked whether
+   * they were processed (e.g. whether the SWIFT message was written) and deleted them.
+   */
+  private void reportInDoubtClaims(BitSet slots) throws IOException {
+    for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+      for (Path claim : claims(slot)) {
+        String[] state = readClaim(claim);
+        if (state != null && CLAIMED.equals(state[0])) {
+          logger.error(
+              "Contract {} was claimed at offset {} but was not confirmed as processed. Check "
+                  + "whether it was processed and delete {} once resolved.",
+              URLDecoder.decode(claim.getFileName().toString(), UTF_8.name()),
+              state[1],
+              claim);
+        }
+      }
+    }
+  }
+
+  /**
+   * Deletes the completed claims that are covered by the checkpoint of their slot, and old enough
+   * that no instance that owned the slot during a rebalance can still replay them.
+   */
+  private void pruneClaims(BitSet slots) throws IOException {
+    Instant expiry = Instant.now().minus(leaseTtl.multipliedBy(2));
+    for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+      for (Path claim : claims(slot)) {
+        String[] state = readClaim(claim);
+        if (state != null
+            && DONE.equals(state[0])
+            && isProcessed(slot, state[1])
+            && Files.getLastModifiedTime(claim).toInstant().isBefore(expiry)) {
+          Files.deleteIfExists(claim);
+        }
+      }
+    }
+  }
+
+  private List<Path> claims(int slot) throws IOException {
+    Path dir = claimDir(slot);
+    if (!Files.isDirectory(dir)) return Collections.emptyList();
+    try (Stream<Path> claims = Files.list(dir)) {
+      return claims
+          .filter(claim -> !claim.getFileName().toString().endsWith(TMP_SUFFIX))
+          .collect(Collectors.toList());
+    }
+  }
+
+  /** @return the state and offset of the claim, or null if it has just been deleted */
+  private static String[] readClaim(Path claim) throws IOException {
+    try {
+      String[] state = new String(Files.readAllBytes(claim), UTF_8).split(" ", 2);
+      // a claim being created may still be empty
+      return state.length == 2 ? state : new String[] {CLAIMED, ""};
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  private Path claimDir(int slot) {
+    return claimDir.resolve(String.format("slot-%02d", slot));
+  }
+
+  /** Replaces the file, so that readers see either the old or the new content. */
+  private static void writeAtomically(Path file, String content) throws IOException {
+    Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), TMP_SUFFIX);
+    Files.write(tmp, content.getBytes(UTF_8));
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /** Stops renewing the lease and releases it, so the other instances take over immediately. */
+  @Override
+  public void close() throws IOException {
+    scheduler.shutdownNow();
+    Files.deleteIfExists(leaseDir.resolve(instanceId + LEASE_SUFFIX));
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2019, Digital Asset (Switzerland) GmbH and/or its affiliates. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.daml.product.structuredproducts;
+
+import com.daml.ledger.javaapi.data.CreatedEvent;
+import com.daml.ledger.javaapi.data.Event;
+import com.daml.ledger.javaapi.data.LedgerOffset;
+import com.daml.ledger.javaapi.data.Transaction;
+import da.refapps.structuredproducts.dcn.CouponEvent;
+import da.refapps.structuredproducts.dcn.KnockOutEvent;
+import da.refapps.structuredproducts.dcn.PaymentInstructions;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forwards to the bot only the events of the trades whose slot is owned by this instance, see
+ * {@link ShardCoordinator}.
+ *
+ * <p>The transaction stream is (re)subscribed from the oldest checkpoint of the owned slots when
+ * this instance starts, when it takes over slots, and when the stream fails. Checkpoints are only
+ * saved again once the stream has caught up with the checkpoints of all these slots. Subscribing
+ * and processing all run on a single thread, so transactions of an old and a new subscription are
+ * never processed concurrently.
+ *
+ * <p>Contracts are claimed before they are handed to the bot and the claim is completed after.
+ * If the instance dies or the bot fails in between, the contract is not processed again when the
+ * transaction is replayed, but reported as in doubt: for payment instructions a SWIFT message to
+ * be checked is preferable to a duplicate one.
+ *
+ * <p>Every instance reads and decodes the whole transaction stream of the party, so sharing the
+ * trades among instances spreads the work of the bot (SWIFT messages, notifications, claims), not
+ * the reading of the stream. Checkpoints are saved after each transaction with events of the owned
+ * slots, and at most once per second otherwise.
+ *
+ * <p>If projections are queried, they are fed the events of the owned slots. The projections of
+ * the slots gained when subscribing, including all of them on start, are first loaded from the
+ * active contracts, so that the stream is never read from the beginning of the ledger. The events
+ * replayed between the checkpoint and the active contracts are applied again, which leaves the
+ * projections unchanged. The projections of the slots lost are dropped.
+ */
+class ShardedBot implements Consumer<Transaction> {
+  private static final Logger logger = LoggerFactory.getLogger(ShardedBot.class);
+
+  private static final long RESUBSCRIBE_DELAY_SECONDS = 5;
+  private static final long CHECKPOINT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final ShardCoordinator coordinator;
+  private final Consumer<Event> bot;
+  private final LedgerAPI ledgerAPI;
+  private final String party;
+  private final Projections projections;
+  private final Scheduler scheduler =
+      Schedulers.from(
+          Executors.newSingleThreadExecutor(
+              r -> {
+                Thread thread = new Thread(r, "sharded-bot");
+                thread.setDaemon(true);
+                return thread;
+              }));
+  // only accessed from the scheduler thread
+  private Disposable subscription;
+  private BitSet subscribedSlots = new BitSet(ShardCoordinator.SLOTS);
+  private long lastCheckpointNanos;
+
+  /** @param projections the projections of the owned slots, or null if they are not queried */
+  ShardedBot(
+      ShardCoordinator coordinator,
+      Consumer<Event> bot,
+      LedgerAPI ledgerAPI,
+      String party,
+      Projections projections) {
+    this.coordinator = coordinator;
+    this.bot = bot;
+    this.ledgerAPI = ledgerAPI;
+    this.party = party;
+    this.projections = projections;
+  }
+
+  void start() throws IOException {
+    coordinator.start(() -> scheduler.scheduleDirect(this::subscribe));
+    scheduler.scheduleDirect(this::subscribe);
+  }
+
+  private void subscribe() {
+    if (subscription != null) ledgerAPI.stopListening(subscription);
+    // slots gained later are only processed after subscribing again from their checkpoints
+    BitSet slots = coordinator.ownedSlots();
+    BitSet gained = (BitSet) slots.clone();
+    gained.andNot(subscribedSlots);
+    subscribedSlots = slots;
+    lastCheckpointNanos = System.nanoTime();
+    if (projections != null) {
+      projections.retainTrades(tradeId -> slots.get(ShardCoordinator.slotOf(tradeId)));
+      if (!gained.isEmpty()) {
+        try {
+          loadProjections(gained);
+        } catch (RuntimeException e) {
+          // loaded again on the next attempt
+          subscribedSlots = (BitSet) slots.clone();
+          subscribedSlots.andNot(gained);
+          onError(e);
+          return;
+        }
+      }
+    }
+    LedgerOffset begin = coordinator.resumeOffset(slots);
+    subscription = ledgerAPI.listenTransactions(party, begin, scheduler, this, this::onError);
+  }
+
+  private void loadProjections(BitSet slots) {
+    List<CreatedEvent> contracts = new ArrayList<>();
+    for (CreatedEvent contract : ledgerAPI.activeContracts(party)) {
+      String tradeId = tradeIdOf(contract);
+      if (tradeId != null && slots.get(ShardCoordinator.slotOf(tradeId))) {
+        contracts.add(contract);
+      }
+    }
+    projections.load(contracts);
+    logger.info("Loaded {} active contracts of {} slots", contracts.size(), slots.cardinality());
+  }
+
+  private void onError(Throwable error) {
+    logger.error(
+        "Error processing the transaction stream, subscribing again in {} s",
+        RESUBSCRIBE_DELAY_SECONDS,
+        error);
+    scheduler.scheduleDirect(this::subscribe, RESUBSCRIBE_DELAY_SECONDS, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public void accept(Transaction transaction) {
+    String offset = transaction.getOffset();
+    // slots lost since subscribing are no longer processed
+    BitSet slots = (BitSet) subscribedSlots.clone();
+    slots.and(coordinator.ownedSlots());
+    List<Event> owned = new ArrayList<>();
+    for (Event event : transaction.getEvents()) {
+      if (event instanceof CreatedEvent) {
+        String tradeId = tradeIdOf((CreatedEvent) event);
+        if (tradeId != null && slots.get(ShardCoordinator.slotOf(tradeId))) {
+          owned.add(event);
+        }
+      } else {
+        // archiving a contract not in the projections is a no-op
+        owned.add(event);
+      }
+    }
+    if (projections != null) {
+      projections.update(owned);
+    }
+
+    boolean replaying = false;
+    for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+      replaying |= coordinator.isProcessed(slot, offset);
+    }
+    boolean processed = false;
+    for (Event event : owned) {
+      if (!(event instanceof CreatedEvent)) continue;
+      int slot = ShardCoordinator.slotOf(tradeIdOf((CreatedEvent) event));
+      if (coordinator.isProcessed(slot, offset)) continue;
+      processed = true;
+      if (coordinator.claim(slot, event.getContractId(), offset)) {
+        try {
+          bot.accept(event);
+        } catch (RuntimeException e) {
+          // the claim stays in doubt and is reported when the transaction is replayed
+          logger.error(
+              "Processing contract {} failed, its claim is left in doubt", event.getContractId());
+          throw e;
+        }
+        coordinator.complete(slot, event.getContractId(), offset);
+      }
+    }
+    // saving an offset behind the checkpoint of a slot would process its contracts again, and
+    // transactions without events of the owned slots are only checkpointed once in a while
+    long now = System.nanoTime();
+    if (!replaying && (processed || now - lastCheckpointNanos >= CHECKPOINT_INTERVAL_NANOS)) {
+      coordinator.saveCheckpoint(offset, slots);
+      lastCheckpointNanos = now;
+    }
+  }
+
+  /** The trade the event belongs to, or null if the event is not processed by the bot. */
+  static String tradeIdOf(CreatedEvent event) {
+    if (CouponEvent.TEMPLATE_ID.equals(event.getTemplateId())) {
+      return new CouponEventView(event.getArguments()).tradeId();
+    } else if (KnockOutEvent.TEMPLATE_ID.equals(event.getTemplateId())) {
+      return new KnockOutEventView(event.getArguments()).tradeId();
+    } else if (PaymentInstructions.TEMPLATE_ID.equals(event.getTemplateId())) {
+      return new PaymentInstructionsView(event.getArguments()).transactionReference();
+    }
+    return null;
+  }
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright (c) 2019, Digital Asset (Switzerland) GmbH and/or its affiliates. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.daml.product.structuredproducts;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.daml.ledger.javaapi.data.Command;
+import com.daml.ledger.javaapi.data.CreatedEvent;
+import com.daml.ledger.javaapi.data.FiltersByParty;
+import com.daml.ledger.javaapi.data.NoFilter;
+import com.daml.ledger.rxjava.DamlLedgerClient;
+import da.refapps.structuredproducts.dcn.DCNTerms;
+import da.refapps.structuredproducts.dcn.IntermediaryTradingRole;
+import da.refapps.structuredproducts.dcn.Trade;
+import da.refapps.structuredproducts.dcn.TradeProposal;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.reactivex.Single;
+import java.math.BigDecimal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Slices a trade of the intermediary into trade proposals to clients by exercising
+ * IntermediaryTradingRole.ProposeTradeToClient for each allocation.
+ *
+ * <p>Clients that already have an active proposal or trade sliced off the trade are skipped, and
+ * the notional proposed or sold to them counts against the notional of the trade, so distributing
+ * the same allocation file twice does not propose anything twice. The remaining allocations are
+ * checked against the notional of the trade before anything is submitted, and then submitted in
+ * batches, one command submission per batch, keeping a bounded number of batches in flight.
+ *
+ * <p>Proposals do not refer to the trade they are sliced off, only to its terms and buyer, so a
+ * trade is refused if the intermediary holds another active trade with the same terms and buyer
+ * account: the proposals sliced off the two could not be told apart.
+ *
+ * <p>Proposals still in flight are not on the ledger yet. As a last resort against two concurrent
+ * distributions, the command id of a batch is derived from the trade and the allocations in it, so
+ * the ledger rejects the same batch submitted again within its deduplication window.
+ */
+class TradeDistributor {
+  private static final Logger logger = LoggerFactory.getLogger(TradeDistributor.class);
+
+  private static final String APPLICATION_ID = "structured-products-distributor";
+
+  private final DamlLedgerClient client;
+  private final Submitter submitter;
+  private final String intermediary;
+  private final int batchSize;
+  private final int window;
+
+  /**
+   * @param batchSize the number of proposals submitted in one command submission
+   * @param window the maximum number of batches in flight
+   */
+  TradeDistributor(DamlLedgerClient client, String intermediary, int batchSize, int window) {
+    this(
+        client,
+        (workflowId, commandId, commands) ->
+            client
+                .getCommandClient()
+                .submitAndWait(workflowId, APPLICATION_ID, commandId, intermediary, commands),
+        intermediary,
+        batchSize,
+        window);
+  }
+
+  /** @param submitter submits the commands of a batch as the intermediary */
+  TradeDistributor(
+      DamlLedgerClient client,
+      Submitter submitter,
+      String intermediary,
+      int batchSize,
+      int window) {
+    if (batchSize < 1 || window < 1) {
+      throw new IllegalArgumentException("Batch size and window must be positive");
+    }
+    this.client = client;
+    this.submitter = submitter;
+    this.intermediary = intermediary;
+    this.batchSize = batchSize;
+    this.window = window;
+  }
+
+  /**
+   * Looks up the trade among the active contracts of the intermediary, together with the notional
+   * already proposed or sold to each client out of it.
+   *
+   * @return null if the trade is not active or not visible to the intermediary
+   */
+  TradeState fetchTrade(Trade.ContractId tradeId) {
+    List<CreatedEvent> contracts =
+        client
+            .getActiveContractSetClient()
+            .getActiveContracts(
+                new FiltersByParty(Collections.singletonMap(intermediary, NoFilter.instance)), true)
+            .concatMapIterable(response -> response.getCreatedEvents())
+            .toList()
+            .blockingGet();
+    return tradeState(tradeId, contracts);
+  }
+
+  /** @return null if the trade is not among the contracts */
+  static TradeState tradeState(Trade.ContractId tradeId, List<CreatedEvent> contracts) {
+    Trade trade = null;
+    for (CreatedEvent contract : contracts) {
+      if (Trade.TEMPLATE_ID.equals(contract.getTemplateId())
+          && tradeId.contractId.equals(contract.getContractId())) {
+        trade = Trade.fromValue(contract.getArguments());
+      }
+    }
+    if (trade == null) return null;
+
+    // ProposeTradeToClient copies the terms with the client's notional, and the trade accepted
+    // from a proposal keeps them
+    Map<String, BigDecimal> allocated = new HashMap<>();
+    List<String> sameTrades = new ArrayList<>();
+    for (CreatedEvent contract : contracts) {
+      if (TradeProposal.TEMPLATE_ID.equals(contract.getTemplateId())) {
+        TradeProposal proposal = TradeProposal.fromValue(contract.getArguments());
+        if (proposal.issuerInfo.equals(trade.buyerInfo) && sameTerms(trade.terms, proposal.terms)) {
+          allocated.merge(proposal.buyer, proposal.terms.notional, BigDecimal::add);
+        }
+      } else if (Trade.TEMPLATE_ID.equals(contract.getTemplateId())) {
+        Trade other = Trade.fromValue(contract.getArguments());
+        if (other.issuerInfo.equals(trade.buyerInfo) && sameTerms(trade.terms, other.terms)) {
+          allocated.merge(other.buyerInfo.accountOwner, other.terms.notional, BigDecimal::add);
+        } else if (other.buyerInfo.equals(trade.buyerInfo)
+            && sameTerms(trade.terms, other.terms)
+            && !tradeId.contractId.equals(contract.getContractId())) {
+          sameTrades.add(contract.getContractId());
+        }
+      }
+    }
+    return new TradeState(trade, allocated, sameTrades);
+  }
+
+  /** Whether the terms are those of the trade, apart from the notional sliced off it. */
+  private static boolean sameTerms(DCNTerms trade, DCNTerms slice) {
+    return trade.equals(
+        new DCNTerms(
+            slice.productId,
+            trade.notional,
+            slice.currency,
+            slice.issuePricePerc,
+            slice.strikeDatesAndPrices,
+            slice.knockoutDatesAndPrices,
+            slice.index1Id,
+            slice.index2Id,
+            slice.variableInterestRate,
+            slice.dayCountFraction,
+            slice.tradeDate,
+            slice.maturityDate,
+            slice.regulator));
+  }
+
+  /**
+   * Checks locally what ProposeTradeToClient would assert on the ledger, and that the allocations
+   * do not add up to more than the notional of the trade.
+   *
+   * @return the allocations to clients that have no proposal or trade for the trade yet
+   */
+  List<Allocation> validate(TradeState state, List<Allocation> allocations) {
+    if (state == null) {
+      throw new IllegalArgumentException("Trade is not active or not visible to " + intermediary);
+    }
+    Trade trade = state.trade;
+    if (!intermediary.equals(trade.buyerInfo.accountOwner)) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Trade %s was bought by %s, not by %s",
+              trade.tradeId, trade.buyerInfo.accountOwner, intermediary));
+    }
+    if (!state.sameTrades.isEmpty()) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Trade %s has the same terms and buyer as the active trades %s, the proposals"
+                  + " sliced off them cannot be told apart",
+              trade.tradeId, state.sameTrades));
+    }
+    return pending(trade.terms.notional, state.allocated, allocations);
+  }
+
+  /**
+   * Skips the clients that already have a share of the trade, and checks that the remaining
+   * allocations and the existing shares together do not exceed the notional of the trade.
+   *
+   * @param allocated the notional already proposed or sold to each client
+   */
+  static List<Allocation> pending(
+      BigDecimal tradeNotional, Map<String, BigDecimal> allocated, List<Allocation> allocations) {
+    BigDecimal total = BigDecimal.ZERO;
+    for (BigDecimal notional : allocated.values()) {
+      total = total.add(notional);
+    }
+    BigDecimal existing = total;
+    List<Allocation> pending = new ArrayList<>();
+    for (Allocation allocation : allocations) {
+      BigDecimal proposed = allocated.get(allocation.client);
+      if (proposed != null) {
+        logger.info(
+            "Skipping {}, already proposed or sold {} of the trade", allocation.client, proposed);
+        continue;
+      }
+      if (allocation.notional.compareTo(tradeNotional) > 0) {
+        throw new IllegalArgumentException(
+            String.format(
+                "Notional %s allocated to %s exceeds the notional of the trade %s",
+                allocation.notional, allocation.client, tradeNotional));
+      }
+      total = total.add(allocation.notional);
+      pending.add(allocation);
+    }
+    if (total.compareTo(tradeNotional) > 0) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Total allocated notional %s (of which %s already proposed or sold) exceeds the"
+                  + " notional of the trade %s",
+              total, existing, tradeNotional));
+    }
+    return pending;
+  }
+
+  static List<List<Allocation>> batches(List<Allocation> allocations, int batchSize) {
+    List<List<Allocation>> batches = new ArrayList<>();
+    for (int from = 0; from < allocations.size(); from += batchSize) {
+      batches.add(allocations.subList(from, Math.min(from + batchSize, allocations.size())));
+    }
+    return batches;
+  }
+
+  /** Submits the proposals and waits until all batches have completed. */
+  Report distribute(Trade.ContractId tradeId, List<Allocation> allocations)
+      throws InterruptedException {
+    List<List<Allocation>> batches = batches(allocations, batchSize);
+    Report report = new Report(batches.size());
+    Semaphore inFlight = new Semaphore(window);
+    CountDownLatch done = new CountDownLatch(batches.size());
+    long start = System.nanoTime();
+    for (int i = 0; i < batches.size(); i++) {
+      int batchNumber = i;
+      List<Allocation> batch = batches.get(i);
+      List<Command> commands = new ArrayList<>(batch.size());
+      for (Allocation allocation : batch) {
+        commands.add(
+            IntermediaryTradingRole.exerciseByKeyProposeTradeToClient(
+                intermediary, allocation.client, allocation.notional, tradeId));
+      }
+      inFlight.acquire();
+      long submitted = System.nanoTime();
+      submitter
+          .submit(tradeId.contractId, commandId(tradeId, batch), commands)
+          .subscribe(
+              ok -> {
+                report.succeeded(batchNumber, batch, System.nanoTime() - submitted);
+                inFlight.release();
+                done.countDown();
+              },
+              error -> {
+                report.failed(batchNumber, batch, System.nanoTime() - submitted, error);
+                inFlight.release();
+                done.countDown();
+              });
+    }
+    done.await();
+    report.elapsedNanos = System.nanoTime() - start;
+    return report;
+  }
+
+  /**
+   * The same allocations of the same trade always get the same command id, however the notionals
+   * are written in the allocation file.
+   */
+  static String commandId(Trade.ContractId tradeId, List<Allocation> batch) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(tradeId.contractId.getBytes(UTF_8));
+      for (Allocation allocation : batch) {
+        String notional = allocation.notional.stripTrailingZeros().toPlainString();
+        digest.update((";" + allocation.client + "," + notional).getBytes(UTF_8));
+      }
+      StringBuilder hex = new StringBuilder("distribute-");
+      for (byte b : Arrays.copyOf(digest.digest(), 16)) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Submits the commands of a batch and completes once the ledger has processed them. */
+  interface Submitter {
+    Single<?> submit(String workflowId, String commandId, List<Command> commands);
+  }
+
+  /** A trade and the notional already proposed or sold to each client out of it. */
+  static final class TradeState {
+    final Trade trade;
+    final Map<String, BigDecimal> allocated;
+    /** The other active trades with the same terms and buyer account. */
+    final List<String> sameTrades;
+
+    TradeState(Trade trade, Map<String, BigDecimal> allocated, List<String> sameTrades) {
+      this.trade = trade;
+      this.allocated = allocated;
+      this.sameTrades = sameTrades;
+    }
+  }
+
+  /** Per-batch latencies and overall throughput of a distribution. */
+  static final class Report {
+    private final long[] latencyNanos;
+    private final AtomicInteger proposals = new AtomicInteger();
+    private final AtomicInteger failedBatches = new AtomicInteger();
+    private final AtomicInteger duplicateBatches = new AtomicInteger();
+    private volatile long elapsedNanos;
+
+    private Report(int batches) {
+      latencyNanos = new long[batches];
+    }
+
+    private void succeeded(int batchNumber, List<Allocation> batch, long latency) {
+      latencyNanos[batchNumber] = latency;
+      proposals.addAndGet(batch.size());
+      logger.info(
+          "Batch {}: proposed {} trades in {} ms",
+          batchNumber,
+          batch.size(),
+          TimeUnit.NANOSECONDS.toMillis(latency));
+    }
+
+    private void failed(int batchNumber, List<Allocation> batch, long latency, Throwable error) {
+      latencyNanos[batchNumber] = latency;
+      if (error instanceof StatusRuntimeException
+          && ((StatusRuntimeException) error).getStatus().getCode()
+              == Status.Code.ALREADY_EXISTS) {
+        duplicateBatches.incrementAndGet();
+        logger.info("Batch {}: already submitted, skipping {}", batchNumber, batch);
+      } else {
+        failedBatches.incrementAndGet();
+        logger.error("Batch {}: failed, none of {} was proposed", batchNumber, batch, error);
+      }
+    }
+
+    int proposals() {
+      return proposals.get();
+    }
+
+    int duplicateBatches() {
+      return duplicateBatches.get();
+    }
+
+    int failedBatches() {
+      return failedBatches.get();
+    }
+
+    @Override
+    public String toString() {
+      long[] sorted = latencyNanos.clone();
+      Arrays.sort(sorted);
+      double seconds = elapsedNanos / 1e9;
+      return String.format(
+          "Proposed %d trades in %d batches (%d already submitted, %d failed) in %.3f s: "
+              + "%.1f proposals/s, batch latency p50 %d ms, p99 %d ms, max %d ms",
+          proposals.get(),
+          sorted.length,
+          duplicateBatches.get(),
+          failedBatches.get(),
+          seconds,
+          seconds > 0 ? proposals.get() / seconds : 0.0,
+          percentileMillis(sorted, 50),
+          percentileMillis(sorted, 99),
+          percentileMillis(sorted, 100));
+    }
+
+    private static long percentileMillis(long[] sorted, int percentile) {
+      if (sorted.length == 0) return 0;
+      int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+      return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, index)]);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2019, Digital Asset (Switzerland) GmbH and/or its affiliates. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.daml.product.structuredproducts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class AsyncNotifierTest {
+  private final CopyOnWriteArrayList<String> messages = new CopyOnWriteArrayList<>();
+  private final CopyOnWriteArrayList<String> fallbackMessages = new CopyOnWriteArrayList<>();
+
+  /** Checks that messages are accepted while the channel is set up and then sent in order */
+  @Test
+  public void testMessagesAreQueuedUntilChannelIsSetUp() throws InterruptedException {
+    CountDownLatch setUp = new CountDownLatch(1);
+    CountDownLatch sent = new CountDownLatch(2);
+    AsyncNotifier notifier =
+        new AsyncNotifier(
+            () -> {
+              setUp.await();
+              return text -> {
+                messages.add(text);
+                sent.countDown();
+              };
+            },
+            fallbackMessages::add);
+
+    notifier.accept("first");
+    notifier.accept("second");
+    assertTrue(messages.isEmpty());
+
+    setUp.countDown();
+    assertTrue(sent.await(10, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("first", "second"), messages);
+    assertTrue(fallbackMessages.isEmpty());
+  }
+
+  /** Checks that messages are passed to the fallback if the channel cannot be set up */
+  @Test
+  public void testFallbackWhenChannelCannotBeSetUp() throws InterruptedException {
+    CountDownLatch sent = new CountDownLatch(1);
+    AsyncNotifier notifier =
+        new AsyncNotifier(
+            () -> {
+              throw new IllegalStateException("no telegram.properties");
+            },
+            text -> {
+              fallbackMessages.add(text);
+              sent.countDown();
+            });
+
+    notifier.accept("message");
+    assertTrue(sent.await(10, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("message"), fallbackMessages);
+  }
+}
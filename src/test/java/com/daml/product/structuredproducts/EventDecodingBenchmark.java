@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2019, Digital Asset (Switzerland) GmbH and/or its affiliates. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.daml.product.structuredproducts;
+
+import static com.daml.product.structuredproducts.TestContracts.USD;
+import static com.daml.product.structuredproducts.TestContracts.couponEvent;
+import static com.daml.product.structuredproducts.TestContracts.knockOutEvent;
+import static com.daml.product.structuredproducts.TestContracts.paymentInstructions;
+
+import com.daml.ledger.javaapi.data.DamlRecord;
+import da.refapps.structuredproducts.dcn.CouponEvent;
+import da.refapps.structuredproducts.dcn.KnockOutEvent;
+import da.refapps.structuredproducts.dcn.PaymentInstructions;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the generated `fromValue` decoders with the views used by {@link PisteBot}, reading the
+ * same fields the bot reads. Run it with the GC profiler to compare allocation rates:
+ *
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ * java -cp target/test-classes:target/classes:$(cat target/classpath.txt) \
+ *   com.daml.product.structuredproducts.EventDecodingBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventDecodingBenchmark {
+  private static final Instant EVENT_DATE = Instant.parse("2019-11-18T00:00:00Z");
+
+  private final DamlRecord couponEvent =
+      couponEvent("tradeId", "issuer", "owner", EVENT_DATE).toValue();
+  private final DamlRecord knockOutEvent =
+      knockOutEvent("tradeId", "issuer", "owner", EVENT_DATE).toValue();
+  private final DamlRecord paymentInstructions =
+      paymentInstructions("txRefCode", "payer", "payee", BigDecimal.TEN, USD, EVENT_DATE)
+          .toValue();
+
+  @Benchmark
+  public void couponEventGenerated(Blackhole bh) {
+    CouponEvent event = CouponEvent.fromValue(couponEvent);
+    bh.consume(event.tradeId);
+    bh.consume(event.issuer);
+    bh.consume(event.owner);
+  }
+
+  @Benchmark
+  public void couponEventView(Blackhole bh) {
+    CouponEventView event = new CouponEventView(couponEvent);
+    bh.consume(event.tradeId());
+    bh.consume(event.issuer());
+    bh.consume(event.owner());
+  }
+
+  @Benchmark
+  public void knockOutEventGenerated(Blackhole bh) {
+    KnockOutEvent event = KnockOutEvent.fromValue(knockOutEvent);
+    bh.consume(event.tradeId);
+    bh.consume(event.knockOutReason);
+  }
+
+  @Benchmark
+  public void knockOutEventView(Blackhole bh) {
+    KnockOutEventView event = new KnockOutEventView(knockOutEvent);
+    bh.consume(event.tradeId());
+    bh.consume(event.knockOutReason());
+  }
+
+  @Benchmark
+  public void paymentInstructionsGenerated(Blackhole bh) {
+    PaymentInstructions event = PaymentInstructions.fromValue(paymentInstructions);
+    bh.consume(event.payerDetails.bic);
+    bh.consume(event.payeeDetails.bic);
+    bh.consume(event.payeeDetails.iban);
+    bh.consume(event.transactionReference);
+    bh.consume(event.amount);
+    bh.consume(event.currency);
+    bh.consume(event.paymentDate);
+  }
+
+  @Benchmark
+  public void paymentInstructionsView(Blackhole bh) {
+    PaymentInstructionsView event = new PaymentInstructionsView(paymentInstructions);
+    bh.consume(event.payerBic());
+    bh.consume(event.payeeBic());
+    bh.consume(event.payeeIban());
+    bh.consume(event.transactionReference());
+    bh.consume(event.amount());
+    bh.consume(event.currency());
+    bh.consume(event.paymentDate());
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(
+            new OptionsBuilder()
+                .include(EventDecodingBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build())
+        .run();
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2019, Digital Asset (Switzerland) GmbH and/or its affiliates. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.daml.product.structuredproducts;
+
+import static com.daml.product.structuredproducts.TestContracts.USD;
+import static com.daml.product.structuredproducts.TestContracts.couponEvent;
+import static com.daml.product.structuredproducts.TestContracts.knockOutEvent;
+import static com.daml.product.structuredproducts.TestContracts.paymentInstructions;
+import static org.junit.Assert.assertEquals;
+
+import da.refapps.structuredproducts.dcn.CouponEvent;
+import da.refapps.structuredproducts.dcn.KnockOutEvent;
+import da.refapps.structuredproducts.dcn.PaymentInstructions;
+import java.math.BigDecimal;
+import java.time.Instant;
+import org.junit.Test;
+
+/** Checks that the views read the same values as the generated decoders. */
+public class EventViewsTest {
+  private static final Instant EVENT_DATE = Instant.parse("2019-11-18T00:00:00Z");
+
+  @Test
+  public void testCouponEventView() {
+    CouponEvent expected = couponEvent("tradeId", "issuer", "owner", EVENT_DATE);
+    CouponEventView view = new CouponEventView(expected.toValue());
+    assertEquals(expected.tradeId, view.tradeId());
+    assertEquals(expected.issuer, view.issuer());
+    assertEquals(expected.owner, view.owner());
+  }
+
+  @Test
+  public void testKnockOutEventView() {
+    KnockOutEvent expected = knockOutEvent("tradeId", "issuer", "owner", EVENT_DATE);
+    KnockOutEventView view = new KnockOutEventView(expected.toValue());
+    assertEquals(expected.tradeId, view.tradeId());
+    assertEquals(expected.knockOutReason, view.knockOutReason());
+  }
+
+  @Test
+  public void testPaymentInstructionsView() {
+    PaymentInstructions expected =
+        paymentInstructions("txRefCode", "payer", "payee", BigDecimal.TEN, USD, EVENT_DATE);
+    PaymentInstructionsView view = new PaymentInstructionsView(expected.toValue());
+    assertEquals(expected.payerDetails.accountOwner, view.payer());
+    assertEquals(expected.payerDetails.bic, view.payerBic());
+    assertEquals(expected.payeeDetails.accountOwner, view.payee());
+    assertEquals(expected.payeeDetails.bic, view.payeeBic());
+    assertEquals(expected.payeeDetails.iban, view.payeeIban());
+    assertEquals(expected.transactionReference, view.transactionReference());
+    assertEquals(expected.amount, view.amount());
+    assertEquals(expected.currency, view.currency());
+    assertEquals(expected.paymentDate, view.paymentDate());
+  }
+}
@@ -4,24 +4,22 @@
  */
 package com.daml.product.structuredproducts;
 
+import static com.daml.product.structuredproducts.TestContracts.USD;
+import static com.daml.product.structuredproducts.TestContracts.couponEvent;
+import static com.daml.product.structuredproducts.TestContracts.created;
+import static com.daml.product.structuredproducts.TestContracts.knockOutEvent;
+import static com.daml.product.structuredproducts.TestContracts.paymentInstructions;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
-import com.daml.ledger.javaapi.data.CreatedEvent;
 import com.prowidesoftware.swift.model.mt.mt2xx.MT202;
-import da.refapps.structuredproducts.dcn.AccountDetails;
-import da.refapps.structuredproducts.dcn.ClosingPrice;
 import da.refapps.structuredproducts.dcn.CouponEvent;
-import da.refapps.structuredproducts.dcn.DayCountFraction;
 import da.refapps.structuredproducts.dcn.KnockOutEvent;
 import da.refapps.structuredproducts.dcn.PaymentInstructions;
-import da.refapps.structuredproducts.dcn.PriceAndCCY;
 import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
-import java.util.Collections;
 import java.util.Date;
-import java.util.Optional;
 import java.util.concurrent.CopyOnWriteArrayList;
 import org.junit.Before;
 import org.junit.Test;
@@ -30,10 +28,7 @@ public class PisteBotTest {
 
   private static final String ISSUER = "issuer";
   private static final String OWNER = "owner";
-  private static final String REGULATOR = "regulator";
   private static final String TRADE_ID = "tradeId";
-  private static final String PRODUCT_ID = "productId";
-  private static final String USD = "USD";
   private final CopyOnWriteArrayList<String> messages = new CopyOnWriteArrayList<>();
   private final CopyOnWriteArrayList<MT202> swiftMessages = new CopyOnWriteArrayList<>();
   private PisteBot bot;
@@ -46,38 +41,9 @@ public class PisteBotTest {
   /** Checks if the expected outgoing Telegram message and no Swift message was generated */
   @Test
   public void testCouponEvent() {
-    PriceAndCCY strike1 = new PriceAndCCY(BigDecimal.valueOf(100), USD);
-    ClosingPrice priceIndex1 = new ClosingPrice("asset-1", strike1);
-    PriceAndCCY strike2 = new PriceAndCCY(BigDecimal.valueOf(100), USD);
-    ClosingPrice priceIndex2 = new ClosingPrice("asset-2", strike2);
-    CouponEvent couponEvent =
-        new CouponEvent(
-            TRADE_ID,
-            PRODUCT_ID,
-            BigDecimal.valueOf(0.02),
-            new DayCountFraction(1L, 2L),
-            Instant.now(),
-            strike1,
-            priceIndex1,
-            strike2,
-            priceIndex2,
-            ISSUER,
-            OWNER,
-            REGULATOR);
+    CouponEvent couponEvent = couponEvent(TRADE_ID, ISSUER, OWNER, Instant.now());
 
-    CreatedEvent event =
-        new CreatedEvent(
-            Collections.emptyList(),
-            "event-1",
-            CouponEvent.TEMPLATE_ID,
-            "cid-1",
-            couponEvent.toValue(),
-            Optional.empty(),
-            Optional.empty(),
-            Collections.emptyList(),
-            Collections.emptyList());
-
-    bot.accept(event);
+    bot.accept(created("cid-1", CouponEvent.TEMPLATE_ID, couponEvent.toValue()));
     assertEquals(
         "Coupon event occurred on trade tradeId between issuer and owner", messages.get(0));
     assertEquals(0, swiftMessages.size());
@@ -86,37 +52,9 @@ public class PisteBotTest {
   /** Checks if the expected outgoing Telegram message and no Swift message was generated */
   @Test
   public void testKnockOutEvent() {
-    PriceAndCCY index1KO = new PriceAndCCY(BigDecimal.valueOf(100), USD);
-    ClosingPrice closingPriceIndex1 = new ClosingPrice("asset-1", index1KO);
-    PriceAndCCY index2KO = new PriceAndCCY(BigDecimal.valueOf(100), USD);
-    ClosingPrice closingPriceIndex2 = new ClosingPrice("asset-2", index2KO);
-    KnockOutEvent knockOutEvent =
-        new KnockOutEvent(
-            TRADE_ID,
-            PRODUCT_ID,
-            Instant.now(),
-            index1KO,
-            closingPriceIndex1,
-            index2KO,
-            closingPriceIndex2,
-            "Some reason for knock out",
-            ISSUER,
-            OWNER,
-            REGULATOR);
-
-    CreatedEvent event =
-        new CreatedEvent(
-            Collections.emptyList(),
-            "event-1",
-            KnockOutEvent.TEMPLATE_ID,
-            "cid-1",
-            knockOutEvent.toValue(),
-            Optional.empty(),
-            Optional.empty(),
-            Collections.emptyList(),
-            Collections.emptyList());
+    KnockOutEvent knockOutEvent = knockOutEvent(TRADE_ID, ISSUER, OWNER, Instant.now());
 
-    bot.accept(event);
+    bot.accept(created("cid-1", KnockOutEvent.TEMPLATE_ID, knockOutEvent.toValue()));
     assertEquals("DCN tradeId has knocked out, reason: Some reason for knock out", messages.get(0));
     assertEquals(0, swiftMessages.size());
   }
@@ -135,25 +73,10 @@ public class PisteBotTest {
   /** Checks if the expected outgoing Telegram and Swift messages were generated */
   @Test
   public void testPaymentMessageEvent() {
-    AccountDetails payerDetails = new AccountDetails("payer", "payerBic", "payerIban");
-    AccountDetails payeeDetails = new AccountDetails("payee", "payeeBic", "payeeIban");
     PaymentInstructions paymentInstructions =
-        new PaymentInstructions(
-            payerDetails, payeeDetails, "txRefCode", BigDecimal.TEN, USD, Instant.now(), REGULATOR);
-
-    CreatedEvent event =
-        new CreatedEvent(
-            Collections.emptyList(),
-            "event-1",
-            PaymentInstructions.TEMPLATE_ID,
-            "cid-1",
-            paymentInstructions.toValue(),
-            Optional.empty(),
-            Optional.empty(),
-            Collections.emptyList(),
-            Collections.emptyList());
+        paymentInstructions("txRefCode", "payer", "payee", BigDecimal.TEN, USD, Instant.now());
 
-    bot.accept(event);
+    bot.accept(created("cid-1", PaymentInstructions.TEMPLATE_ID, paymentInstructions.toValue()));
     // last piece of the message is a volatile id (Unique End to End Transaction Reference)
     assertTrue(
         messages
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2019, Digital Asset (Switzerland) GmbH and/or its affiliates. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.daml.product.structuredproducts;
+
+import static com.daml.product.structuredproducts.TestContracts.archived;
+import static com.daml.product.structuredproducts.TestContracts.couponEvent;
+import static com.daml.product.structuredproducts.TestContracts.created;
+import static com.daml.product.structuredproducts.TestContracts.instant;
+import static com.daml.product.structuredproducts.TestContracts.knockOutEvent;
+import static com.daml.product.structuredproducts.TestContracts.paymentInstructions;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.daml.ledger.javaapi.data.DamlRecord;
+import da.refapps.structuredproducts.dcn.CouponEvent;
+import da.refapps.structuredproducts.dcn.KnockOutEvent;
+import da.refapps.structuredproducts.dcn.PaymentInstructions;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProjectionsTest {
+  private static final String ISSUER = "Issuer";
+  private static final String INTERMEDIARY = "Intermediary";
+  private static final String CLIENT = "Client";
+  private static final LocalDate COUPON_DATE = LocalDate.parse("2019-11-18");
+  private static final LocalDate KNOCK_OUT_DATE = LocalDate.parse("2022-02-15");
+
+  private Projections projections;
+
+  @Before
+  public void setUp() {
+    projections = new Projections();
+    projections.update(
+        Arrays.asList(
+            created("#1:0", CouponEvent.TEMPLATE_ID, coupon("INTER001", INTERMEDIARY)),
+            created(
+                "#1:1",
+                PaymentInstructions.TEMPLATE_ID,
+                payment("INTER001", ISSUER, INTERMEDIARY, "2500000", "USD", COUPON_DATE))));
+    projections.update(
+        Arrays.asList(
+            created("#2:0", CouponEvent.TEMPLATE_ID, coupon("CLIENT001", CLIENT)),
+            created(
+                "#2:1",
+                PaymentInstructions.TEMPLATE_ID,
+                payment("CLIENT001", INTERMEDIARY, CLIENT, "1300000", "USD", COUPON_DATE))));
+    projections.update(
+        Arrays.asList(
+            created(
+                "#3:0",
+                KnockOutEvent.TEMPLATE_ID,
+                knockOut("INTER001", INTERMEDIARY, KNOCK_OUT_DATE)),
+            created(
+                "#3:1",
+                PaymentInstructions.TEMPLATE_ID,
+                payment("INTER001", ISSUER, INTERMEDIARY, "50000000", "JPY", KNOCK_OUT_DATE))));
+  }
+
+  /** Checks the payments going out on a day, and that they are classified by their event */
+  @Test
+  public void testPaymentsByDate() {
+    List<Projections.Payment> payments = projections.payments(COUPON_DATE, COUPON_DATE, null, null);
+    assertEquals(2, payments.size());
+    assertEquals("#1:1", payments.get(0).contractId);
+    assertEquals("#2:1", payments.get(1).contractId);
+    assertEquals(Projections.PaymentKind.COUPON, payments.get(0).kind);
+
+    List<Projections.Payment> redemptions =
+        projections.payments(LocalDate.parse("2022-02-01"), null, null, null);
+    assertEquals(1, redemptions.size());
+    assertEquals(Projections.PaymentKind.REDEMPTION, redemptions.get(0).kind);
+  }
+
+  /** Checks the party and trade id indexes combined with the date range */
+  @Test
+  public void testPaymentsByPartyAndTradeId() {
+    assertEquals(
+        Collections.singletonList("#2:1"),
+        contractIds(projections.payments(null, null, CLIENT, null)));
+    assertEquals(
+        Collections.singletonList("#1:1"),
+        contractIds(projections.payments(null, COUPON_DATE, INTERMEDIARY, "INTER001")));
+  }
+
+  @Test
+  public void testCouponTotalsPerCurrency() {
+    Map<String, BigDecimal> totals =
+        projections.paymentTotals(null, null, null, null, Projections.PaymentKind.COUPON);
+    assertEquals(1, totals.size());
+    assertEquals(0, new BigDecimal("3800000").compareTo(totals.get("USD")));
+  }
+
+  @Test
+  public void testKnockOutsInMonth() {
+    List<Projections.KnockOut> knockOuts =
+        projections.knockOuts(
+            LocalDate.parse("2022-02-01"), LocalDate.parse("2022-02-28"), null, null);
+    assertEquals(1, knockOuts.size());
+    assertEquals("INTER001", knockOuts.get(0).tradeId);
+  }
+
+  /**
+   * Checks that a payment is classified by the event of its own transaction, when a knock out of
+   * another buyer's trade with the same id is redeemed on the date of a coupon.
+   */
+  @Test
+  public void testRedemptionOnCouponDate() {
+    projections.update(
+        Arrays.asList(
+            created("#4:0", KnockOutEvent.TEMPLATE_ID, knockOut("INTER001", CLIENT, COUPON_DATE)),
+            created(
+                "#4:1",
+                PaymentInstructions.TEMPLATE_ID,
+                payment("INTER001", ISSUER, CLIENT, "1000000", "USD", COUPON_DATE))));
+    List<Projections.Payment> payments =
+        projections.payments(COUPON_DATE, COUPON_DATE, null, "INTER001");
+    assertEquals(Arrays.asList("#1:1", "#4:1"), contractIds(payments));
+    assertEquals(Projections.PaymentKind.COUPON, payments.get(0).kind);
+    assertEquals(Projections.PaymentKind.REDEMPTION, payments.get(1).kind);
+  }
+
+  /** Checks that active contracts are loaded, and their payments classified by the event date */
+  @Test
+  public void testLoadActiveContracts() {
+    Projections loaded = new Projections();
+    loaded.load(
+        Arrays.asList(
+            created(
+                "#3:1",
+                PaymentInstructions.TEMPLATE_ID,
+                payment("INTER001", ISSUER, INTERMEDIARY, "50000000", "JPY", KNOCK_OUT_DATE)),
+            created("#1:0", CouponEvent.TEMPLATE_ID, coupon("INTER001", INTERMEDIARY)),
+            created(
+                "#1:1",
+                PaymentInstructions.TEMPLATE_ID,
+                payment("INTER001", ISSUER, INTERMEDIARY, "2500000", "USD", COUPON_DATE)),
+            created(
+                "#3:0",
+                KnockOutEvent.TEMPLATE_ID,
+                knockOut("INTER001", INTERMEDIARY, KNOCK_OUT_DATE)),
+            created(
+                "#5:0",
+                PaymentInstructions.TEMPLATE_ID,
+                payment(
+                    "INTER001",
+                    ISSUER,
+                    INTERMEDIARY,
+                    "100",
+                    "USD",
+                    LocalDate.parse("2020-02-18")))));
+    List<Projections.Payment> payments = loaded.payments(null, null, null, "INTER001");
+    assertEquals(Arrays.asList("#1:1", "#5:0", "#3:1"), contractIds(payments));
+    assertEquals(Projections.PaymentKind.COUPON, payments.get(0).kind);
+    assertEquals(Projections.PaymentKind.OTHER, payments.get(1).kind);
+    assertEquals(Projections.PaymentKind.REDEMPTION, payments.get(2).kind);
+    assertEquals(1, loaded.coupons(null, null, INTERMEDIARY, null).size());
+    assertEquals(1, loaded.knockOuts(null, null, INTERMEDIARY, null).size());
+  }
+
+  @Test
+  public void testPaymentWithoutEventIsOther() {
+    projections.update(
+        Collections.singletonList(
+            created(
+                "#5:0",
+                PaymentInstructions.TEMPLATE_ID,
+                payment("CLIENT001", INTERMEDIARY, CLIENT, "100", "USD", COUPON_DATE))));
+    Map<String, BigDecimal> totals =
+        projections.paymentTotals(null, null, null, null, Projections.PaymentKind.OTHER);
+    assertEquals(Collections.singleton("USD"), totals.keySet());
+    assertEquals(0, new BigDecimal("100").compareTo(totals.get("USD")));
+  }
+
+  @Test
+  public void testArchivedContractIsRemoved() {
+    projections.update(
+        Collections.singletonList(
+            archived("#2:1", PaymentInstructions.TEMPLATE_ID)));
+    assertEquals(
+        Collections.singletonList("#1:1"),
+        contractIds(projections.payments(COUPON_DATE, COUPON_DATE, null, null)));
+  }
+
+  /** Checks that a contract between a party and itself can be archived and added again */
+  @Test
+  public void testSamePartyOnBothSides() {
+    projections.update(
+        Collections.singletonList(
+            created(
+                "#4:0",
+                PaymentInstructions.TEMPLATE_ID,
+                payment("INTER002", INTERMEDIARY, INTERMEDIARY, "100", "USD", COUPON_DATE))));
+    projections.update(
+        Collections.singletonList(archived("#4:0", PaymentInstructions.TEMPLATE_ID)));
+    projections.update(
+        Collections.singletonList(
+            created(
+                "#4:1",
+                PaymentInstructions.TEMPLATE_ID,
+                payment("INTER002", INTERMEDIARY, INTERMEDIARY, "100", "USD", COUPON_DATE))));
+    assertEquals(
+        Collections.singletonList("#4:1"),
+        contractIds(projections.payments(null, null, null, "INTER002")));
+  }
+
+  /** Checks that a party on a day matches the same rows whichever index is the smaller */
+  @Test
+  public void testPaymentsByPartyAndDate() {
+    for (int i = 0; i < 3; i++) {
+      projections.update(
+          Collections.singletonList(
+              created(
+                  "#5:" + i,
+                  PaymentInstructions.TEMPLATE_ID,
+                  payment("OTHER00" + i, ISSUER, "Other", "100", "USD", COUPON_DATE))));
+    }
+    assertEquals(
+        Arrays.asList("#1:1", "#2:1"),
+        contractIds(projections.payments(COUPON_DATE, COUPON_DATE, INTERMEDIARY, null)));
+    assertEquals(
+        Collections.singletonList("#3:1"),
+        contractIds(projections.payments(KNOCK_OUT_DATE, null, INTERMEDIARY, null)));
+  }
+
+  @Test
+  public void testRetainTrades() {
+    projections.retainTrades("CLIENT001"::equals);
+    assertEquals(
+        Collections.singletonList("#2:1"),
+        contractIds(projections.payments(null, null, null, null)));
+    assertEquals(0, projections.knockOuts(null, null, null, null).size());
+  }
+
+  /** Checks the query parameters of the HTTP API */
+  @Test
+  public void testQueryService() throws Exception {
+    QueryService queryService = new QueryService(projections);
+    Map<String, String> params = QueryService.parseQuery("party=Client&from=2019-11-18");
+    assertEquals(1, ((List<?>) queryService.query("/coupons", params)).size());
+    Map<String, String> kind = new HashMap<>();
+    kind.put("kind", "redemption");
+    assertEquals(
+        Collections.singleton("JPY"),
+        ((Map<?, ?>) queryService.query("/payments/totals", kind)).keySet());
+    assertNull(queryService.query("/unknown", params));
+  }
+
+  private static List<String> contractIds(List<Projections.Payment> payments) {
+    return payments.stream().map(payment -> payment.contractId).collect(Collectors.toList());
+  }
+
+  private static DamlRecord coupon(String tradeId, String owner) {
+    String issuer = owner.equals(CLIENT) ? INTERMEDIARY : ISSUER;
+    return couponEvent(tradeId, issuer, owner, instant(COUPON_DATE)).toValue();
+  }
+
+  private static DamlRecord knockOut(String tradeId, String owner, LocalDate redemptionDate) {
+    return knockOutEvent(tradeId, ISSUER, owner, instant(redemptionDate)).toValue();
+  }
+
+  private static DamlRecord payment(
+      String tradeId,
+      String payer,
+      String payee,
+      String amount,
+      String currency,
+      LocalDate paymentDate) {
+    return paymentInstructions(
+            tradeId, payer, payee, new BigDecimal(amount), currency, instant(paymentDate))
+        .toValue();
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2019, Digital Asset (Switzerland) GmbH and/or its affiliates. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.daml.product.structuredproducts;
+
+import static com.daml.product.structuredproducts.TestContracts.USD;
+import static com.daml.product.structuredproducts.TestContracts.couponEvent;
+import static com.daml.product.structuredproducts.TestContracts.created;
+import static com.daml.product.structuredproducts.TestContracts.instant;
+import static com.daml.product.structuredproducts.TestContracts.knockOutEvent;
+import static com.daml.product.structuredproducts.TestContracts.paymentInstructions;
+
+import da.refapps.structuredproducts.dcn.CouponEvent;
+import da.refapps.structuredproducts.dcn.KnockOutEvent;
+import da.refapps.structuredproducts.dcn.PaymentInstructions;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the latency distribution (see the p0.99 rows) of the queries served by {@link
+ * QueryService}, on projections of {@value #TRADES} trades held by {@value #CLIENTS} clients, each
+ * with a quarterly coupon over {@value #YEARS} years and a tenth of them knocked out. Run it like
+ * {@link EventDecodingBenchmark}:
+ *
+ * <pre>
+ * java -cp target/test-classes:target/classes:$(cat target/classpath.txt) \
+ *   com.daml.product.structuredproducts.QueryBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+  private static final int TRADES = 10_000;
+  private static final int CLIENTS = 100;
+  private static final int YEARS = 5;
+  private static final String INTERMEDIARY = "Intermediary";
+  private static final BigDecimal COUPON = BigDecimal.valueOf(25_000);
+  private static final BigDecimal REDEMPTION = BigDecimal.valueOf(1_000_000);
+  private static final LocalDate FIRST_COUPON = LocalDate.parse("2019-11-18");
+
+  private final Projections projections = new Projections();
+  private final LocalDate couponDay = FIRST_COUPON.plusMonths(3 * 10);
+
+  @Setup
+  public void setUp() {
+    int contracts = 0;
+    for (int trade = 0; trade < TRADES; trade++) {
+      String tradeId = String.format("TRADE%05d", trade);
+      String client = "Client" + trade % CLIENTS;
+      // spread the trades over a quarter
+      LocalDate first = FIRST_COUPON.plusDays(trade % 90);
+      for (int quarter = 0; quarter < YEARS * 4; quarter++) {
+        Instant date = instant(first.plusMonths(3 * quarter));
+        projections.update(
+            Arrays.asList(
+                created(
+                    "#" + contracts++,
+                    CouponEvent.TEMPLATE_ID,
+                    couponEvent(tradeId, INTERMEDIARY, client, date).toValue()),
+                created(
+                    "#" + contracts++,
+                    PaymentInstructions.TEMPLATE_ID,
+                    paymentInstructions(tradeId, INTERMEDIARY, client, COUPON, USD, date)
+                        .toValue())));
+      }
+      if (trade % 10 == 0) {
+        Instant date = instant(first.plusMonths(3 * YEARS * 4));
+        projections.update(
+            Arrays.asList(
+                created(
+                    "#" + contracts++,
+                    KnockOutEvent.TEMPLATE_ID,
+                    knockOutEvent(tradeId, INTERMEDIARY, client, date).toValue()),
+                created(
+                    "#" + contracts++,
+                    PaymentInstructions.TEMPLATE_ID,
+                    paymentInstructions(tradeId, INTERMEDIARY, client, REDEMPTION, USD, date)
+                        .toValue())));
+      }
+    }
+  }
+
+  /** The MT202s going out on a day. */
+  @Benchmark
+  public Object paymentsOnDay() {
+    return projections.payments(couponDay, couponDay, null, null);
+  }
+
+  /** The payments of a client in a year. */
+  @Benchmark
+  public Object paymentsOfClientInYear() {
+    return projections.payments(couponDay, couponDay.plusYears(1), "Client42", null);
+  }
+
+  /** The payments of the intermediary on a day, a party of every trade. */
+  @Benchmark
+  public Object paymentsOfIntermediaryOnDay() {
+    return projections.payments(couponDay, couponDay, INTERMEDIARY, null);
+  }
+
+  @Benchmark
+  public Object paymentsOfTrade() {
+    return projections.payments(null, null, null, "TRADE04242");
+  }
+
+  /** The coupon cash per currency in a month. */
+  @Benchmark
+  public Object couponTotalsInMonth() {
+    return projections.paymentTotals(
+        couponDay, couponDay.plusMonths(1), null, null, Projections.PaymentKind.COUPON);
+  }
+
+  @Benchmark
+  public Object knockOutsInMonth() {
+    LocalDate month = FIRST_COUPON.plusYears(YEARS);
+    return projections.knockOuts(month, month.plusMonths(1), null, null);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(QueryBenchmark.class.getSimpleName()).build()).run();
+  }
+}
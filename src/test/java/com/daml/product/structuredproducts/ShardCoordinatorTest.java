@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2019, Digital Asset (Switzerland) GmbH and/or its affiliates. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.daml.product.structuredproducts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.daml.ledger.javaapi.data.LedgerOffset;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ShardCoordinatorTest {
+  private static final Duration LEASE_TTL = Duration.ofMinutes(1);
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path dir;
+
+  @Before
+  public void setUp() {
+    dir = folder.getRoot().toPath();
+  }
+
+  /** Checks that every slot is owned by exactly one of the live instances */
+  @Test
+  public void testSlotsArePartitioned() throws IOException {
+    ShardCoordinator first = new ShardCoordinator(dir, "first", LEASE_TTL);
+    ShardCoordinator second = new ShardCoordinator(dir, "second", LEASE_TTL);
+    first.start(() -> {});
+    second.start(() -> {});
+    first.heartbeat();
+
+    int firstSlots = 0;
+    for (int slot = 0; slot < ShardCoordinator.SLOTS; slot++) {
+      assertNotEquals(first.owns(slot), second.owns(slot));
+      if (first.owns(slot)) firstSlots++;
+    }
+    assertTrue(firstSlots > 0 && firstSlots < ShardCoordinator.SLOTS);
+    first.close();
+    second.close();
+  }
+
+  /** Checks that the slots of a stopped instance are taken over from its checkpoint */
+  @Test
+  public void testRebalanceAfterInstanceStops() throws IOException {
+    ShardCoordinator first = new ShardCoordinator(dir, "first", LEASE_TTL);
+    ShardCoordinator second = new ShardCoordinator(dir, "second", LEASE_TTL);
+    first.start(() -> {});
+    second.start(() -> {});
+    first.heartbeat();
+    first.saveCheckpoint("0000000000000040", first.ownedSlots());
+    second.saveCheckpoint("0000000000000042", second.ownedSlots());
+    int slot = firstOwnedSlot(second);
+    second.close();
+
+    assertTrue(first.heartbeat());
+    for (int s = 0; s < ShardCoordinator.SLOTS; s++) {
+      assertTrue(first.owns(s));
+    }
+    assertTrue(first.isProcessed(slot, "0000000000000042"));
+    assertFalse(first.isProcessed(slot, "0000000000000043"));
+    assertEquals("0000000000000040", absolute(first.resumeOffset(first.ownedSlots())));
+    first.close();
+  }
+
+  /** Checks that a restarted instance resumes from its own checkpoint */
+  @Test
+  public void testRestartResumesFromCheckpoint() throws IOException {
+    ShardCoordinator instance = new ShardCoordinator(dir, "instance", LEASE_TTL);
+    instance.start(() -> {});
+    assertEquals(
+        LedgerOffset.LedgerBegin.getInstance(), instance.resumeOffset(instance.ownedSlots()));
+    instance.saveCheckpoint("0000000000000042", instance.ownedSlots());
+    instance.close();
+
+    ShardCoordinator restarted = new ShardCoordinator(dir, "instance", LEASE_TTL);
+    restarted.start(() -> {});
+    assertEquals("0000000000000042", absolute(restarted.resumeOffset(restarted.ownedSlots())));
+    restarted.close();
+  }
+
+  /** Checks that a contract can be claimed only once across instances */
+  @Test
+  public void testContractIsClaimedOnce() throws IOException {
+    ShardCoordinator first = new ShardCoordinator(dir, "first", LEASE_TTL);
+    ShardCoordinator second = new ShardCoordinator(dir, "second", LEASE_TTL);
+    first.start(() -> {});
+    second.start(() -> {});
+
+    assertTrue(first.claim(7, "#12:0", "0000000000000012"));
+    assertFalse(second.claim(7, "#12:0", "0000000000000012"));
+    first.complete(7, "#12:0", "0000000000000012");
+    assertFalse(first.claim(7, "#12:0", "0000000000000012"));
+    first.close();
+    second.close();
+  }
+
+  /** Checks that only done claims covered by the checkpoint are pruned */
+  @Test
+  public void testDoneClaimsArePruned() throws IOException {
+    ShardCoordinator instance = new ShardCoordinator(dir, "instance", LEASE_TTL);
+    instance.start(() -> {});
+    assertTrue(instance.claim(7, "#12:0", "0000000000000012"));
+    instance.complete(7, "#12:0", "0000000000000012");
+    assertTrue(instance.claim(7, "#12:1", "0000000000000012"));
+    instance.saveCheckpoint("0000000000000012", instance.ownedSlots());
+    Path claims = dir.resolve("claims").resolve("slot-07");
+    try (Stream<Path> files = Files.list(claims)) {
+      for (Path claim : files.collect(Collectors.toList())) {
+        Files.setLastModifiedTime(claim, FileTime.from(Instant.now().minus(Duration.ofHours(1))));
+      }
+    }
+
+    instance.heartbeat();
+    // the completed claim is pruned, the one in doubt is kept for the operator
+    assertTrue(instance.claim(7, "#12:0", "0000000000000013"));
+    assertFalse(instance.claim(7, "#12:1", "0000000000000013"));
+    instance.close();
+  }
+
+  private static String absolute(LedgerOffset offset) {
+    return ((LedgerOffset.Absolute) offset).getOffset();
+  }
+
+  private static int firstOwnedSlot(ShardCoordinator coordinator) {
+    for (int slot = 0; slot < ShardCoordinator.SLOTS; slot++) {
+      if (coordinator.owns(slot)) return slot;
+    }
+    throw new IllegalStateException("The coordinator owns no slots");
+  }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2019, Digital Asset (Switzerland) GmbH and/or its affiliates. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.daml.product.structuredproducts;
+
+import static com.daml.product.structuredproducts.TestContracts.USD;
+import static com.daml.product.structuredproducts.TestContracts.created;
+import static com.daml.product.structuredproducts.TestContracts.paymentInstructions;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.daml.ledger.javaapi.data.CreatedEvent;
+import com.daml.ledger.javaapi.data.Event;
+import com.daml.ledger.javaapi.data.LedgerOffset;
+import com.daml.ledger.javaapi.data.Transaction;
+import da.refapps.structuredproducts.dcn.PaymentInstructions;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ShardedBotTest {
+  private static final Duration LEASE_TTL = Duration.ofMinutes(1);
+  private static final Instant PAYMENT_DATE = Instant.parse("2019-11-18T00:00:00Z");
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final List<String> processed = new CopyOnWriteArrayList<>();
+  private final List<ShardCoordinator> coordinators = new ArrayList<>();
+  private final StubLedgerAPI ledgerAPI = new StubLedgerAPI();
+  private Path dir;
+  private ShardCoordinator coordinator;
+  private Consumer<Event> bot = event -> processed.add(event.getContractId());
+
+  @Before
+  public void setUp() {
+    dir = folder.getRoot().toPath();
+    coordinator = coordinator("bot");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    for (ShardCoordinator c : coordinators) {
+      c.close();
+    }
+  }
+
+  /** Checks that only the contracts of the trades in the owned slots reach the bot */
+  @Test
+  public void testOnlyOwnedSlotsAreProcessed() throws Exception {
+    coordinator("other").start(() -> {});
+    start();
+    BitSet owned = coordinator.ownedSlots();
+    assertFalse(owned.cardinality() == ShardCoordinator.SLOTS);
+
+    accept(
+        "0000000000000001",
+        payment("#1:0", tradeId(owned, true, -1)),
+        payment("#1:1", tradeId(owned, false, -1)));
+    assertEquals(Collections.singletonList("#1:0"), processed);
+  }
+
+  /** Checks that a contract is claimed, processed and completed once, even if replayed */
+  @Test
+  public void testContractIsProcessedOnce() throws Exception {
+    start();
+    String tradeId = tradeId(coordinator.ownedSlots(), true, -1);
+    Transaction transaction = transaction("0000000000000001", payment("#1:0", tradeId));
+
+    ledgerAPI.process.accept(transaction);
+    ledgerAPI.process.accept(transaction);
+    assertEquals(Collections.singletonList("#1:0"), processed);
+    int slot = ShardCoordinator.slotOf(tradeId);
+    assertTrue(coordinator.isProcessed(slot, "0000000000000001"));
+    assertFalse(coordinator.claim(slot, "#1:0", "0000000000000001"));
+  }
+
+  /**
+   * Checks that catching up from the oldest checkpoint skips the slots further ahead, and does not
+   * move their checkpoint back.
+   */
+  @Test
+  public void testCatchUpDoesNotMoveCheckpointsBack() throws Exception {
+    BitSet all = new BitSet(ShardCoordinator.SLOTS);
+    all.set(0, ShardCoordinator.SLOTS);
+    String ahead = tradeId(all, true, -1);
+    String behind = tradeId(all, true, ShardCoordinator.slotOf(ahead));
+    checkpoint("ahead", "0000000000000005", ahead);
+    checkpoint("behind", "0000000000000002", behind);
+    start();
+
+    accept("0000000000000003", payment("#3:0", ahead), payment("#3:1", behind));
+    assertEquals(Collections.singletonList("#3:1"), processed);
+    assertTrue(coordinator.isProcessed(ShardCoordinator.slotOf(ahead), "0000000000000005"));
+
+    accept("0000000000000006", payment("#6:0", ahead));
+    assertEquals(Arrays.asList("#3:1", "#6:0"), processed);
+    assertTrue(coordinator.isProcessed(ShardCoordinator.slotOf(ahead), "0000000000000006"));
+  }
+
+  /** Checks that a contract whose processing failed is left in doubt instead of processed twice */
+  @Test
+  public void testFailedContractIsLeftInDoubt() throws Exception {
+    bot =
+        event -> {
+          throw new IllegalStateException("bot failed");
+        };
+    start();
+    String tradeId = tradeId(coordinator.ownedSlots(), true, -1);
+    Transaction transaction = transaction("0000000000000001", payment("#1:0", tradeId));
+    try {
+      ledgerAPI.process.accept(transaction);
+      fail("the failure of the bot should end the stream");
+    } catch (IllegalStateException expected) {
+    }
+
+    bot = event -> processed.add(event.getContractId());
+    ledgerAPI.process.accept(transaction);
+    assertTrue(processed.isEmpty());
+  }
+
+  /** Checks that transactions without events of the owned slots are not all checkpointed */
+  @Test
+  public void testOnlyOwnedEventsAreCheckpointedImmediately() throws Exception {
+    start();
+    String tradeId = tradeId(coordinator.ownedSlots(), true, -1);
+    int slot = ShardCoordinator.slotOf(tradeId);
+
+    accept("0000000000000001", payment("#1:0", tradeId));
+    accept("0000000000000002");
+    assertTrue(coordinator.isProcessed(slot, "0000000000000001"));
+    assertFalse(coordinator.isProcessed(slot, "0000000000000002"));
+  }
+
+  /**
+   * Checks that the projections of the owned slots are loaded from the active contracts, and the
+   * stream is read from the checkpoint instead of the beginning of the ledger.
+   */
+  @Test
+  public void testProjectionsAreLoadedFromActiveContracts() throws Exception {
+    coordinator("other").start(() -> {});
+    BitSet all = new BitSet(ShardCoordinator.SLOTS);
+    all.set(0, ShardCoordinator.SLOTS);
+    checkpoint("bot", "0000000000000005", all);
+    List<CreatedEvent> contracts = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      contracts.add(payment("#1:" + i, "TRADE" + i));
+    }
+    ledgerAPI.activeContracts = contracts;
+    Projections projections = new Projections();
+    start(projections);
+
+    BitSet owned = coordinator.ownedSlots();
+    List<String> expected = new ArrayList<>();
+    for (CreatedEvent contract : contracts) {
+      if (owned.get(ShardCoordinator.slotOf(ShardedBot.tradeIdOf(contract)))) {
+        expected.add(contract.getContractId());
+      }
+    }
+    assertFalse(expected.isEmpty() || expected.size() == contracts.size());
+    List<String> loaded = new ArrayList<>();
+    for (Projections.Payment payment : projections.payments(null, null, null, null)) {
+      loaded.add(payment.contractId);
+    }
+    assertEquals(expected, loaded);
+    assertEquals("0000000000000005", ((LedgerOffset.Absolute) ledgerAPI.begin).getOffset());
+  }
+
+  private ShardCoordinator coordinator(String instanceId) {
+    ShardCoordinator c = new ShardCoordinator(dir, instanceId, LEASE_TTL);
+    coordinators.add(c);
+    return c;
+  }
+
+  /** Leaves the checkpoint of a stopped instance for the slot of the trade. */
+  private void checkpoint(String instanceId, String offset, String tradeId) throws IOException {
+    BitSet slots = new BitSet(ShardCoordinator.SLOTS);
+    slots.set(ShardCoordinator.slotOf(tradeId));
+    checkpoint(instanceId, offset, slots);
+  }
+
+  private void checkpoint(String instanceId, String offset, BitSet slots) throws IOException {
+    ShardCoordinator stopped = new ShardCoordinator(dir, instanceId, LEASE_TTL);
+    stopped.start(() -> {});
+    stopped.saveCheckpoint(offset, slots);
+    stopped.close();
+  }
+
+  private void start() throws Exception {
+    start(null);
+  }
+
+  private void start(Projections projections) throws Exception {
+    new ShardedBot(coordinator, event -> bot.accept(event), ledgerAPI, "Intermediary", projections)
+        .start();
+    assertTrue(ledgerAPI.subscribed.await(10, TimeUnit.SECONDS));
+  }
+
+  private void accept(String offset, Event... events) {
+    ledgerAPI.process.accept(transaction(offset, events));
+  }
+
+  private static Transaction transaction(String offset, Event... events) {
+    return new Transaction("tx-" + offset, "", "", PAYMENT_DATE, Arrays.asList(events), offset);
+  }
+
+  private static CreatedEvent payment(String contractId, String tradeId) {
+    return created(
+        contractId,
+        PaymentInstructions.TEMPLATE_ID,
+        paymentInstructions(tradeId, "payer", "payee", BigDecimal.TEN, USD, PAYMENT_DATE)
+            .toValue());
+  }
+
+  /** A trade id whose slot is (or is not) in the slots, and is not the excluded slot. */
+  private static String tradeId(BitSet slots, boolean in, int excludedSlot) {
+    for (int i = 0; ; i++) {
+      String tradeId = "TRADE" + i;
+      int slot = ShardCoordinator.slotOf(tradeId);
+      if (slot != excludedSlot && slots.get(slot) == in) return tradeId;
+    }
+  }
+
+  /** Hands the subscribed transaction consumer to the test instead of reading from a ledger. */
+  private static final class StubLedgerAPI extends LedgerAPI {
+    private final CountDownLatch subscribed = new CountDownLatch(1);
+    private volatile List<CreatedEvent> activeContracts = Collections.emptyList();
+    private volatile LedgerOffset begin;
+    private volatile Consumer<Transaction> process;
+
+    private StubLedgerAPI() {
+      super(null);
+    }
+
+    @Override
+    public Disposable listenTransactions(
+        String partyName,
+        LedgerOffset begin,
+        Scheduler scheduler,
+        Consumer<Transaction> process,
+        Consumer<Throwable> onError) {
+      this.begin = begin;
+      this.process = process;
+      subscribed.countDown();
+      return Disposables.empty();
+    }
+
+    @Override
+    public List<CreatedEvent> activeContracts(String partyName) {
+      return activeContracts;
+    }
+
+    @Override
+    public void stopListening(Disposable subscription) {}
+  }
+}
@@ -7,6 +7,7 @@ package com.daml.product.structuredproducts;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.startsWith;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -16,6 +17,7 @@ import com.daml.extensions.testing.utils.ContractWithId;
 import com.daml.ledger.javaapi.data.Identifier;
 import com.daml.ledger.javaapi.data.Party;
 import com.daml.ledger.javaapi.data.Value;
+import com.daml.ledger.rxjava.DamlLedgerClient;
 import com.google.common.collect.Lists;
 import com.google.protobuf.InvalidProtocolBufferException;
 import da.refapps.structuredproducts.dcn.CouponEvent;
@@ -28,11 +30,13 @@ import da.refapps.structuredproducts.dcn.TradeProposal;
 import java.math.BigDecimal;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneOffset;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import org.junit.Before;
@@ -40,6 +44,8 @@ import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExternalResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class StructuredProductsIT {
   private static final Path RELATIVE_DAR_PATH = Paths.get("./target/structured-products.dar");
@@ -50,17 +56,40 @@ public class StructuredProductsIT {
   private static final Party CLIENT_PARTY = new Party("Client");
   private static final Party ISSUER_PARTY = new Party("Issuer");
 
-  private static final List<String> telegramMessages = new ArrayList<>();
+  private static final Logger logger = LoggerFactory.getLogger(StructuredProductsIT.class);
+
+  /** How long setting up the notification channel takes, like registering the Telegram bot. */
+  private static final Duration NOTIFIER_SETUP = Duration.ofSeconds(2);
+
+  private static final List<String> telegramMessages = new CopyOnWriteArrayList<>();
+  private static Readiness readiness;
+  private static volatile long startNanos;
+  private static volatile Duration timeToNotifier;
 
   private static final Sandbox sandbox =
       Sandbox.builder()
           .dar(RELATIVE_DAR_PATH)
           .moduleAndScript(TEST_MODULE, TEST_SCRIPT)
           .parties(INTERMEDIARY_PARTY.getValue(), CLIENT_PARTY.getValue(), ISSUER_PARTY.getValue())
-          .setupAppCallback(
-              client -> Main.runBots(client, "./output_messages", telegramMessages::add))
+          .setupAppCallback(StructuredProductsIT::runBots)
           .build();
 
+  /** Starts the bots like Main does, measuring from before the notifier is created. */
+  private static LedgerAPI runBots(DamlLedgerClient client) {
+    startNanos = System.nanoTime();
+    timeToNotifier = null;
+    readiness = new Readiness(null);
+    Consumer<String> notifier =
+        new AsyncNotifier(
+            () -> {
+              Thread.sleep(NOTIFIER_SETUP.toMillis());
+              timeToNotifier = Duration.ofNanos(System.nanoTime() - startNanos);
+              return telegramMessages::add;
+            },
+            logger::info);
+    return Main.runBots(client, "./output_messages", notifier, readiness, null);
+  }
+
   @ClassRule public static ExternalResource sandboxClassRule = sandbox.getClassRule();
   @Rule public ExternalResource sandboxRule = sandbox.getRule();
 
@@ -70,7 +99,7 @@ public class StructuredProductsIT {
   }
 
   @Test
-  public void testWorkflow() throws InvalidProtocolBufferException {
+  public void testWorkflow() throws InvalidProtocolBufferException, InterruptedException {
     final DefaultLedgerAdapter ledgerAdapter = sandbox.getLedgerAdapter();
     TradeProposal.ContractId tradeProposal =
         ledgerAdapter.getCreatedContractId(
@@ -174,8 +203,13 @@ public class StructuredProductsIT {
             false,
             i -> i.transactionReference.equals("CLIENT001")));
 
-    // check Telegram messages are sent
+    // check Telegram messages are sent, they are delivered in the background
     List<String> expectedTelegramMessages = generateExpectedTelegramMessages();
+    long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+    while (telegramMessages.size() < expectedTelegramMessages.size()
+        && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
     for (int i = 0; i < telegramMessages.size(); ++i) {
       assertThat(telegramMessages.get(i), startsWith(expectedTelegramMessages.get(i)));
     }
@@ -184,6 +218,30 @@ public class StructuredProductsIT {
     assertThat(telegramMessages.size(), is(expectedTelegramMessages.size()));
   }
 
+  /**
+   * Checks that the bots are ready and receive events while the notification channel is still
+   * being set up, and reports the startup times.
+   */
+  @Test
+  public void testStartupDoesNotWaitForNotifier() throws InterruptedException {
+    long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+    while (timeToNotifier == null && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertNotNull("The notification channel was not set up", timeToNotifier);
+    assertTrue("The bots did not signal readiness", readiness.timeToReady().isPresent());
+    assertTrue("The bots received no event", readiness.timeToFirstEvent().isPresent());
+    Duration toReady = readiness.timeToReady().get();
+    Duration toFirstEvent = readiness.timeToFirstEvent().get();
+    logger.info(
+        "Startup: ready after {} ms, first event after {} ms, notifier set up after {} ms",
+        toReady.toMillis(),
+        toFirstEvent.toMillis(),
+        timeToNotifier.toMillis());
+    assertTrue(toReady.compareTo(timeToNotifier) < 0);
+    assertTrue(toFirstEvent.compareTo(timeToNotifier) < 0);
+  }
+
   private <Cid, Contract> Cid find(
       DefaultLedgerAdapter ledgerAdapter,
       Party party,
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2019, Digital Asset (Switzerland) GmbH and/or its affiliates. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.daml.product.structuredproducts;
+
+import com.daml.ledger.javaapi.data.ArchivedEvent;
+import com.daml.ledger.javaapi.data.CreatedEvent;
+import com.daml.ledger.javaapi.data.DamlRecord;
+import com.daml.ledger.javaapi.data.Identifier;
+import da.refapps.structuredproducts.dcn.AccountDetails;
+import da.refapps.structuredproducts.dcn.ClosingPrice;
+import da.refapps.structuredproducts.dcn.CouponEvent;
+import da.refapps.structuredproducts.dcn.DayCountFraction;
+import da.refapps.structuredproducts.dcn.KnockOutEvent;
+import da.refapps.structuredproducts.dcn.PaymentInstructions;
+import da.refapps.structuredproducts.dcn.PriceAndCCY;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.Optional;
+
+/**
+ * Contracts and events shared by the tests and benchmarks. Account details are derived from the
+ * party, e.g. "payer" has the BIC "payerBic" and the IBAN "payerIban".
+ */
+final class TestContracts {
+  static final String PRODUCT_ID = "productId";
+  static final String REGULATOR = "regulator";
+  static final String USD = "USD";
+  static final String KNOCK_OUT_REASON = "Some reason for knock out";
+
+  private TestContracts() {}
+
+  static CreatedEvent created(String contractId, Identifier templateId, DamlRecord args) {
+    return new CreatedEvent(
+        Collections.emptyList(),
+        "event-" + contractId,
+        templateId,
+        contractId,
+        args,
+        Optional.empty(),
+        Optional.empty(),
+        Collections.emptyList(),
+        Collections.emptyList());
+  }
+
+  static ArchivedEvent archived(String contractId, Identifier templateId) {
+    return new ArchivedEvent(
+        Collections.emptyList(), "event-archived-" + contractId, templateId, contractId);
+  }
+
+  static CouponEvent couponEvent(String tradeId, String issuer, String owner, Instant date) {
+    PriceAndCCY strike = new PriceAndCCY(BigDecimal.valueOf(100), USD);
+    return new CouponEvent(
+        tradeId,
+        PRODUCT_ID,
+        BigDecimal.valueOf(0.02),
+        new DayCountFraction(1L, 2L),
+        date,
+        strike,
+        new ClosingPrice("asset-1", strike),
+        strike,
+        new ClosingPrice("asset-2", strike),
+        issuer,
+        owner,
+        REGULATOR);
+  }
+
+  static KnockOutEvent knockOutEvent(String tradeId, String issuer, String owner, Instant date) {
+    PriceAndCCY ko = new PriceAndCCY(BigDecimal.valueOf(100), USD);
+    return new KnockOutEvent(
+        tradeId,
+        PRODUCT_ID,
+        date,
+        ko,
+        new ClosingPrice("asset-1", ko),
+        ko,
+        new ClosingPrice("asset-2", ko),
+        KNOCK_OUT_REASON,
+        issuer,
+        owner,
+        REGULATOR);
+  }
+
+  static PaymentInstructions paymentInstructions(
+      String tradeId,
+      String payer,
+      String payee,
+      BigDecimal amount,
+      String currency,
+      Instant date) {
+    return new PaymentInstructions(
+        account(payer), account(payee), tradeId, amount, currency, date, REGULATOR);
+  }
+
+  static AccountDetails account(String party) {
+    return new AccountDetails(party, party + "Bic", party + "Iban");
+  }
+
+  static Instant instant(LocalDate date) {
+    return date.atStartOfDay().toInstant(ZoneOffset.UTC);
+  }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2019, Digital Asset (Switzerland) GmbH and/or its affiliates. All rights reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.daml.product.structuredproducts;
+
+import static com.daml.product.structuredproducts.TestContracts.PRODUCT_ID;
+import static com.daml.product.structuredproducts.TestContracts.REGULATOR;
+import static com.daml.product.structuredproducts.TestContracts.USD;
+import static com.daml.product.structuredproducts.TestContracts.account;
+import static com.daml.product.structuredproducts.TestContracts.created;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.daml.ledger.javaapi.data.CreatedEvent;
+import da.refapps.structuredproducts.dcn.DCNTerms;
+import da.refapps.structuredproducts.dcn.DayCountFraction;
+import da.refapps.structuredproducts.dcn.KODatesAndPrices;
+import da.refapps.structuredproducts.dcn.PriceAndCCY;
+import da.refapps.structuredproducts.dcn.StrikeDatesAndPrices;
+import da.refapps.structuredproducts.dcn.Trade;
+import da.refapps.structuredproducts.dcn.TradeProposal;
+import da.refapps.structuredproducts.dcn.VariableInterestRate;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.reactivex.Single;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TradeDistributorTest {
+  private static final BigDecimal TRADE_NOTIONAL = new BigDecimal("50000000");
+  private static final Trade.ContractId TRADE_ID = new Trade.ContractId("#5:0");
+  private static final String ISSUER = "Issuer";
+  private static final String INTERMEDIARY = "Intermediary";
+  private static final Instant TRADE_DATE = Instant.parse("2019-11-11T00:00:00Z");
+  private static final int BATCH_SIZE = 2;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testReadAllocationFile() throws IOException {
+    List<Allocation> allocations =
+        Allocation.read(write("# client,notional", "Client,26000000", "", "Client2, 1000000.5"));
+    assertEquals(2, allocations.size());
+    assertEquals("Client2", allocations.get(1).client);
+    assertEquals(new BigDecimal("1000000.5"), allocations.get(1).notional);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDuplicateClientIsRejected() throws IOException {
+    Allocation.read(write("Client,100", "Client,200"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNonPositiveNotionalIsRejected() throws IOException {
+    Allocation.read(write("Client,0"));
+  }
+
+  @Test
+  public void testAllocationsWithinNotional() {
+    List<Allocation> allocations =
+        Arrays.asList(
+            new Allocation("Client", new BigDecimal("26000000")),
+            new Allocation("Client2", new BigDecimal("24000000")));
+    assertEquals(
+        allocations, TradeDistributor.pending(TRADE_NOTIONAL, Collections.emptyMap(), allocations));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testAllocationsExceedingNotionalAreRejected() {
+    TradeDistributor.pending(
+        TRADE_NOTIONAL,
+        Collections.emptyMap(),
+        Arrays.asList(
+            new Allocation("Client", new BigDecimal("26000000")),
+            new Allocation("Client2", new BigDecimal("24000001"))));
+  }
+
+  /** Checks that distributing again skips the clients already proposed to */
+  @Test
+  public void testClientsAlreadyProposedToAreSkipped() {
+    List<Allocation> pending =
+        TradeDistributor.pending(
+            TRADE_NOTIONAL,
+            Collections.singletonMap("Client", new BigDecimal("26000000")),
+            Arrays.asList(
+                new Allocation("Client", new BigDecimal("26000000")),
+                new Allocation("Client2", new BigDecimal("24000000"))));
+    assertEquals(1, pending.size());
+    assertEquals("Client2", pending.get(0).client);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNotionalOnLedgerCountsAgainstTrade() {
+    TradeDistributor.pending(
+        TRADE_NOTIONAL,
+        Collections.singletonMap("Client", new BigDecimal("26000000")),
+        Arrays.asList(new Allocation("Client2", new BigDecimal("24000001"))));
+  }
+
+  @Test
+  public void testBatches() {
+    List<Allocation> allocations =
+        Arrays.asList(
+            new Allocation("c1", BigDecimal.ONE),
+            new Allocation("c2", BigDecimal.ONE),
+            new Allocation("c3", BigDecimal.ONE));
+    List<List<Allocation>> batches = TradeDistributor.batches(allocations, 2);
+    assertEquals(2, batches.size());
+    assertEquals(1, batches.get(1).size());
+    assertEquals("c3", batches.get(1).get(0).client);
+  }
+
+  /** Checks that resubmitting the same batch gets the same command id, so the ledger dedups it */
+  @Test
+  public void testCommandIdIsDeterministic() {
+    List<Allocation> batch = Arrays.asList(new Allocation("Client", BigDecimal.TEN));
+    assertEquals(
+        TradeDistributor.commandId(TRADE_ID, batch),
+        TradeDistributor.commandId(
+            TRADE_ID, Arrays.asList(new Allocation("Client", BigDecimal.TEN))));
+    assertEquals(
+        TradeDistributor.commandId(TRADE_ID, batch),
+        TradeDistributor.commandId(
+            TRADE_ID, Arrays.asList(new Allocation("Client", new BigDecimal("10.00")))));
+    assertNotEquals(
+        TradeDistributor.commandId(TRADE_ID, batch),
+        TradeDistributor.commandId(new Trade.ContractId("#6:0"), batch));
+  }
+
+  /**
+   * Checks that the proposals and trades sliced off the trade count against it, and those of other
+   * trades do not
+   */
+  @Test
+  public void testTradeState() {
+    List<CreatedEvent> contracts =
+        Arrays.asList(
+            trade(TRADE_ID.contractId, "TRADE1", terms(TRADE_NOTIONAL), ISSUER, INTERMEDIARY),
+            proposal("#6:0", terms(new BigDecimal("1000000")), INTERMEDIARY, "Client"),
+            trade("#7:0", "CLIENT1", terms(new BigDecimal("2000000")), INTERMEDIARY, "Client2"),
+            trade("#8:0", "CLIENT2", terms(new BigDecimal("3000000")), INTERMEDIARY, "Client2"),
+            // sliced off a trade with other terms
+            proposal("#9:0", otherTerms(new BigDecimal("4000000")), INTERMEDIARY, "Client3"));
+    TradeDistributor.TradeState state = TradeDistributor.tradeState(TRADE_ID, contracts);
+    assertEquals("TRADE1", state.trade.tradeId);
+    assertEquals(2, state.allocated.size());
+    assertEquals(0, new BigDecimal("1000000").compareTo(state.allocated.get("Client")));
+    assertEquals(0, new BigDecimal("5000000").compareTo(state.allocated.get("Client2")));
+    assertTrue(state.sameTrades.isEmpty());
+    assertNull(TradeDistributor.tradeState(new Trade.ContractId("#42:0"), contracts));
+  }
+
+  /** Checks that a trade is refused if another active trade has the same terms and buyer */
+  @Test
+  public void testTradeWithSameTermsIsRefused() {
+    List<CreatedEvent> contracts =
+        Arrays.asList(
+            trade(TRADE_ID.contractId, "TRADE1", terms(TRADE_NOTIONAL), ISSUER, INTERMEDIARY),
+            trade("#6:0", "TRADE2", terms(new BigDecimal("1000000")), ISSUER, INTERMEDIARY),
+            trade("#7:0", "TRADE3", otherTerms(TRADE_NOTIONAL), ISSUER, INTERMEDIARY));
+    TradeDistributor.TradeState state = TradeDistributor.tradeState(TRADE_ID, contracts);
+    assertEquals(Collections.singletonList("#6:0"), state.sameTrades);
+    try {
+      distributor((workflowId, commandId, commands) -> Single.just(commandId), 1)
+          .validate(state, Collections.singletonList(new Allocation("Client", BigDecimal.ONE)));
+      fail("the trade should be refused");
+    } catch (IllegalArgumentException expected) {
+      assertTrue(expected.getMessage().contains("#6:0"));
+    }
+  }
+
+  /** Checks that every batch is submitted once, and no more than the window is in flight */
+  @Test
+  public void testDistributeWithinWindow() throws InterruptedException {
+    List<String> commandIds = new CopyOnWriteArrayList<>();
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    TradeDistributor distributor =
+        distributor(
+            (workflowId, commandId, commands) -> {
+              assertEquals(TRADE_ID.contractId, workflowId);
+              commandIds.add(commandId);
+              maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+              return Single.timer(10, TimeUnit.MILLISECONDS)
+                  .doOnSuccess(tick -> inFlight.decrementAndGet());
+            },
+            2);
+    List<Allocation> allocations = new ArrayList<>();
+    for (int i = 0; i < 9; i++) {
+      allocations.add(new Allocation("Client" + i, BigDecimal.ONE));
+    }
+
+    TradeDistributor.Report report = distributor.distribute(TRADE_ID, allocations);
+    List<String> expected = new ArrayList<>();
+    for (List<Allocation> batch : TradeDistributor.batches(allocations, BATCH_SIZE)) {
+      expected.add(TradeDistributor.commandId(TRADE_ID, batch));
+    }
+    assertEquals(expected, commandIds);
+    assertTrue(maxInFlight.get() <= 2);
+    assertEquals(9, report.proposals());
+    assertEquals(0, report.failedBatches());
+  }
+
+  /** Checks that a batch already submitted is counted as a duplicate, and not as a failure */
+  @Test
+  public void testDistributeReport() throws InterruptedException {
+    List<Allocation> allocations =
+        Arrays.asList(
+            new Allocation("Client", BigDecimal.ONE),
+            new Allocation("Client2", BigDecimal.ONE),
+            new Allocation("Client3", BigDecimal.ONE),
+            new Allocation("Client4", BigDecimal.ONE),
+            new Allocation("Client5", BigDecimal.ONE));
+    List<List<Allocation>> batches = TradeDistributor.batches(allocations, BATCH_SIZE);
+    String duplicate = TradeDistributor.commandId(TRADE_ID, batches.get(0));
+    String failed = TradeDistributor.commandId(TRADE_ID, batches.get(1));
+    TradeDistributor distributor =
+        distributor(
+            (workflowId, commandId, commands) -> {
+              if (commandId.equals(duplicate)) {
+                return Single.error(new StatusRuntimeException(Status.ALREADY_EXISTS));
+              } else if (commandId.equals(failed)) {
+                return Single.error(new StatusRuntimeException(Status.UNAVAILABLE));
+              }
+              return Single.just(commandId);
+            },
+            1);
+
+    TradeDistributor.Report report = distributor.distribute(TRADE_ID, allocations);
+    assertEquals(1, report.proposals());
+    assertEquals(1, report.duplicateBatches());
+    assertEquals(1, report.failedBatches());
+    assertThat(
+        report.toString(), startsWith("Proposed 1 trades in 3 batches (1 already submitted, 1"));
+  }
+
+  private static TradeDistributor distributor(TradeDistributor.Submitter submitter, int window) {
+    return new TradeDistributor(null, submitter, INTERMEDIARY, BATCH_SIZE, window);
+  }
+
+  private static CreatedEvent trade(
+      String contractId, String tradeId, DCNTerms terms, String issuer, String buyer) {
+    return created(
+        contractId,
+        Trade.TEMPLATE_ID,
+        new Trade(tradeId, terms, BigDecimal.valueOf(100), account(issuer), account(buyer))
+            .toValue());
+  }
+
+  private static CreatedEvent proposal(
+      String contractId, DCNTerms terms, String issuer, String buyer) {
+    return created(
+        contractId,
+        TradeProposal.TEMPLATE_ID,
+        new TradeProposal(terms, BigDecimal.valueOf(100), account(issuer), buyer).toValue());
+  }
+
+  private static DCNTerms terms(BigDecimal notional) {
+    return terms(PRODUCT_ID, notional);
+  }
+
+  private static DCNTerms otherTerms(BigDecimal notional) {
+    return terms("otherProductId", notional);
+  }
+
+  private static DCNTerms terms(String productId, BigDecimal notional) {
+    PriceAndCCY price = new PriceAndCCY(BigDecimal.valueOf(100), USD);
+    return new DCNTerms(
+        productId,
+        notional,
+        USD,
+        BigDecimal.valueOf(100),
+        new StrikeDatesAndPrices(Collections.emptyList(), price, price),
+        new KODatesAndPrices(Collections.emptyList(), price, price),
+        "index1",
+        "index2",
+        new VariableInterestRate(BigDecimal.valueOf(0.01), BigDecimal.valueOf(0.05)),
+        new DayCountFraction(1L, 2L),
+        TRADE_DATE,
+        TRADE_DATE.plus(Duration.ofDays(3 * 365)),
+        REGULATOR);
+  }
+
+  private Path write(String... lines) throws IOException {
+    Path file = folder.newFile().toPath();
+    Files.write(file, Arrays.asList(lines), UTF_8);
+    return file;
+  }
+}